@@ -9,6 +9,12 @@ sourceSets {
         java.srcDir("src/main/java")
         resources.srcDir("src/main/java")
     }
+    // Benchmarks (not included in the jar)
+    create("bench") {
+        java.srcDir("src/bench/java")
+        compileClasspath += sourceSets["main"].output + sourceSets["main"].compileClasspath
+        runtimeClasspath += sourceSets["main"].output + sourceSets["main"].runtimeClasspath
+    }
 }
 
 repositories {
@@ -60,6 +66,13 @@ tasks.register<Copy>("extractLibs") {
     into("$projectDir/libs")
 }
 
+// Per-worker and striped slot counts (gradlew slotCountsBenchmark --args="slots hits workers...")
+tasks.register<JavaExec>("slotCountsBenchmark") {
+    classpath = sourceSets["bench"].runtimeClasspath
+    mainClass = "GenEditScan.SlotCountsBenchmark"
+    jvmArgs("-Xmx4g")
+}
+
 tasks.named("build") {
     finalizedBy("extractLibs")
     finalizedBy("clean")
@@ -0,0 +1,172 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Slot counts benchmark class (per-worker arrays against the striped table, see SlotCounts).
+ * The same number of hits is counted by 1 to N workers, as the hits of one sample shared by its scan workers,
+ * and the hits are either spread over every slot (uniform) or concentrated on a few slots (hot), which is
+ * the worst case for the atomic increments of the striped table. The count time (all the workers), the reduce
+ * time and the memory of the count arrays are printed per mode, pattern and number of workers, as the median
+ * of the repetitions after the warm-up.
+ * Run with: gradlew slotCountsBenchmark [--args="slots hits workers..."]
+ *
+ * @author NARO
+ */
+public class SlotCountsBenchmark {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    private static final int WARMUP = 2;
+    private static final int REPEAT = 5;
+
+    /**
+     * slots of the hot pattern
+     */
+    private static final int HOT_SLOTS = 64;
+
+    /**
+     * atomic arrays of the striped table (SlotCounts.STRIPES)
+     */
+    private static final int STRIPES = 4;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args number of slots, number of hits, numbers of workers
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int slots = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int hits = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 25;
+        int[] workers = args.length > 2
+                ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4, 8, 16};
+
+        System.out.println("#Cores\t" + Runtime.getRuntime().availableProcessors() + "\tSlots\t" + slots
+                + "\tHits\t" + hits);
+        System.out.println("#Mode\tPattern\tWorkers\tCountMs\tReduceMs\tNsPerHit\tArraysMB");
+        for (String pattern : new String[]{"uniform", "hot"}) {
+            for (int nworkers : workers) {
+                int[][] streams = streams(slots, hits, nworkers, pattern.equals("hot"));
+                for (boolean striped : new boolean[]{false, true}) {
+                    long[] count = new long[REPEAT];
+                    long[] reduce = new long[REPEAT];
+                    for (int rep = -WARMUP; rep < REPEAT; rep++) {
+                        long[] nanos = run(slots, striped, streams, hits);
+                        if (rep >= 0) {
+                            count[rep] = nanos[0];
+                            reduce[rep] = nanos[1];
+                        }
+                    }
+                    long countNanos = median(count);
+                    long arrays = 4L * slots * (striped ? Math.min(nworkers, STRIPES) : nworkers);
+                    System.out.printf("%s\t%s\t%d\t%.1f\t%.1f\t%.2f\t%d%n", striped ? "striped" : "local", pattern,
+                            nworkers, countNanos / 1e6, median(reduce) / 1e6, (double) countNanos / hits,
+                            arrays >> 20);
+                }
+            }
+        }
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Slots hit by each worker (generated before the timing).
+     *
+     * @param slots    number of slots
+     * @param hits     number of hits of all the workers
+     * @param nworkers number of workers
+     * @param hot      true:hits on HOT_SLOTS slots, false:hits on every slot
+     * @return slots per worker
+     */
+    private static int[][] streams(int slots, int hits, int nworkers, boolean hot) {
+        Random random = new Random(nworkers);
+        int[][] streams = new int[nworkers][];
+        for (int w = 0; w < nworkers; w++) {
+            int[] stream = new int[hits / nworkers + (w < hits % nworkers ? 1 : 0)];
+            for (int i = 0; i < stream.length; i++) {
+                stream[i] = random.nextInt(hot ? Math.min(HOT_SLOTS, slots) : slots);
+            }
+            streams[w] = stream;
+        }
+        return streams;
+    }
+
+    /**
+     * Count the hits of the workers and reduce the counts.
+     *
+     * @param slots   number of slots
+     * @param striped true:striped table, false:per-worker arrays
+     * @param streams slots hit by each worker
+     * @param hits    number of hits (checked against the reduced counts)
+     * @return count and reduce time (ns)
+     * @throws InterruptedException if interrupted
+     */
+    private static long[] run(int slots, boolean striped, int[][] streams, int hits) throws InterruptedException {
+        SlotCounts slotCounts = new SlotCounts(slots, striped, streams.length);
+        CountDownLatch ready = new CountDownLatch(streams.length);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int[] stream : streams) {
+            SlotCounts.Counter counter = slotCounts.counter();
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int slot : stream) {
+                    counter.add(slot);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        ready.await();
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long t1 = System.nanoTime();
+        int[] counts = slotCounts.reduce();
+        long t2 = System.nanoTime();
+
+        long total = 0L;
+        for (int count : counts) {
+            total += count;
+        }
+        if (total != hits) {
+            throw new IllegalStateException("Counted " + total + " hits of " + hits + ".");
+        }
+        return new long[]{t1 - t0, t2 - t1};
+    }
+
+    /**
+     * Median of the repetitions.
+     *
+     * @param values values
+     * @return median
+     */
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
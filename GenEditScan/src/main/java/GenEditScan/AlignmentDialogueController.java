@@ -5,7 +5,6 @@
 package GenEditScan;
 
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -39,6 +38,44 @@ import java.util.*;
  * @author NARO
  */
 public class AlignmentDialogueController implements Initializable {
+    //========================================================================//
+    // Local class
+    //========================================================================//
+
+    /**
+     * Colored runs of a sequence.
+     * Consecutive bases of the same color are drawn as one Text.
+     */
+    private static final class ColoredSequence {
+        private final String[] runs;
+        private final Color[] colors;
+
+        private ColoredSequence(String sequence) {
+            List<String> runList = new ArrayList<>();
+            List<Color> colorList = new ArrayList<>();
+            int start = 0;
+            for (int i = 1; i <= sequence.length(); i++) {
+                if (i == sequence.length() || color(sequence.charAt(i)) != color(sequence.charAt(start))) {
+                    runList.add(sequence.substring(start, i));
+                    colorList.add(color(sequence.charAt(start)));
+                    start = i;
+                }
+            }
+            this.runs = runList.toArray(new String[0]);
+            this.colors = colorList.toArray(new Color[0]);
+        }
+
+        private static Color color(char base) {
+            return switch (base) {
+                case 'A' -> Color.BLUE;
+                case 'T' -> Color.ORANGE;
+                case 'G' -> Color.GREEN;
+                case 'C' -> Color.RED;
+                default -> Color.BLACK;
+            };
+        }
+    }
+
     @FXML
     private AnchorPane mainPaneID;          // Main window
 
@@ -77,6 +114,30 @@ public class AlignmentDialogueController implements Initializable {
     //========================================================================//
     static String outsideFile;
 
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * maximum number of rows loaded at once (larger ranges are paged)
+     */
+    private static final int EAGER_ROWS = 10000;
+
+    /**
+     * maximum number of cached colored sequences
+     */
+    private static final int MAX_COLORED_SEQUENCES = 4096;
+
+    /**
+     * colored runs of the sequences in the least recently used order
+     */
+    private static final Map<String, ColoredSequence> coloredSequences =
+            new LinkedHashMap<>(MAX_COLORED_SEQUENCES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ColoredSequence> eldest) {
+                    return this.size() > MAX_COLORED_SEQUENCES;
+                }
+            };
+
     //========================================================================//
     // Public function
     //========================================================================//
@@ -94,9 +155,6 @@ public class AlignmentDialogueController implements Initializable {
      * @param startEnd Start and end positions on the vector sequence
      */
     public AlignmentDialogueController(Node node, int... startEnd) {
-        // TableView items
-        ObservableList<AlignmentDialogueItems> alignmentDialogueItems = FXCollections.observableArrayList();
-
         // Open screen
         FXMLLoader loader = new FXMLLoader(this.getClass().getResource("AlignmentDialogue.fxml"));
         Parent root = null;
@@ -109,26 +167,16 @@ public class AlignmentDialogueController implements Initializable {
 
         AlignmentDialogueController alignmentDialogueController = loader.getController();
 
-        int pos = 0;
-        String vectorStart = null;
         File file = new File(outsideFile);
-        try (BufferedReader br = Files.newBufferedReader(file.toPath())) {
-            // pos line
-            int iPos = 0;
-            int iCount = 1;
-            int iKmer = 2;
-
-            // seq line
-            int iLeft = 0;
-            int iRight = 1;
-            int iMutant = 2;
-            int iWildType = 3;
-            int iPval = 6;
-            int iFDR = 7;
-            int iBonferroni = 8;
-
-            String str = br.readLine();
-            if (str.startsWith("#K-mer")) {
+        OutsideIndex outsideIndex;
+        int first;
+        int last;
+        try {
+            String str;
+            try (BufferedReader br = OutsideIndex.open(file, 0L)) {
+                str = br.readLine();
+            }
+            if (str != null && str.startsWith("#K-mer")) {
                 String[] header = str.split("\t");
                 alignmentDialogueController.kmerID.setText("K-mer: " + header[1]);
                 alignmentDialogueController.thresholdID.setText("Threshold: " + header[3]);
@@ -139,47 +187,30 @@ public class AlignmentDialogueController implements Initializable {
                 return;
             }
 
-            while ((str = br.readLine()) != null) {
-                String[] posLine = str.split("\t");
-                pos = Integer.parseInt(posLine[iPos]);
-
-                if (startEnd.length > 1) {
-                    if (pos < startEnd[0]) {
-                        for (int i = 0; i < Integer.parseInt(posLine[iCount]); i++) {
-                            br.readLine();
-                        }
-                        continue;
-                    } else if (pos > startEnd[1]) {
-                        break;
-                    }
-                }
-
-                if (Objects.isNull(vectorStart)) {
-                    vectorStart = String.valueOf(pos);
-                }
-
-                for (int i = 0; i < Integer.parseInt(posLine[iCount]); i++) {
-                    String[] seqLine = br.readLine().split("\t");
-                    int mutant = Integer.parseInt(seqLine[iMutant]);
-                    int wildType = Integer.parseInt(seqLine[iWildType]);
-                    String sequence = seqLine[iLeft] + "-" + posLine[iKmer] + "-" + seqLine[iRight];
-                    float pval = Float.parseFloat(seqLine[iPval]);
-                    float fdr = Float.parseFloat(seqLine[iFDR]);
-                    float bonferroni = Float.parseFloat(seqLine[iBonferroni]);
-
-                    AlignmentDialogueItems item = new AlignmentDialogueItems(pos, i + 1, sequence, mutant, wildType,
-                            pval, fdr, bonferroni);
-                    alignmentDialogueItems.add(item);
-                }
-            }
+            // Index entries of the range
+            outsideIndex = OutsideIndex.load(file);
+            first = startEnd.length > 1 ? outsideIndex.lowerBound(startEnd[0]) : 0;
+            last = startEnd.length > 1 ? outsideIndex.lowerBound(startEnd[1] + 1) : outsideIndex.size();
         } catch (IOException e) {
             String message = "Please select outside.txt first.";
             new ErrorDialogueController(message, "red", node);
             return;
         }
 
+        String vectorStart = first < last ? String.valueOf(outsideIndex.getPosition(first)) : null;
+        int pos = first < last ? outsideIndex.getPosition(last - 1) : 0;
+
+        // TableView items (rows are read page by page as the table is scrolled)
+        OutsidePagedList outsidePagedList = new OutsidePagedList(file, outsideIndex, first, last);
+        if (outsidePagedList.size() <= EAGER_ROWS) {
+            alignmentDialogueController.tableViewID.setItems(FXCollections.observableArrayList(outsidePagedList));
+        } else {
+            // Sorting would read every page, so it is only available for small ranges.
+            alignmentDialogueController.tableViewID.getColumns().forEach(column -> column.setSortable(false));
+            alignmentDialogueController.tableViewID.setItems(outsidePagedList);
+        }
+
         alignmentDialogueController.vectorPositionID.setText("Vector position: " + vectorStart + " - " + pos);
-        alignmentDialogueController.tableViewID.setItems(alignmentDialogueItems);
         alignmentDialogueController.tableViewID.getSelectionModel().setCellSelectionEnabled(true);
 
         // Open FXML
@@ -232,16 +263,11 @@ public class AlignmentDialogueController implements Initializable {
                     if (empty || item == null) {
                         setGraphic(null);
                     } else {
+                        ColoredSequence coloredSequence = coloredSequences.computeIfAbsent(item, ColoredSequence::new);
                         TextFlow textFlow = new TextFlow();
-                        for (String word : item.split("")) {
-                            Text text = new Text(word);
-                            switch (word) {
-                                case "A" -> text.setFill(Color.BLUE);
-                                case "T" -> text.setFill(Color.ORANGE);
-                                case "G" -> text.setFill(Color.GREEN);
-                                case "C" -> text.setFill(Color.RED);
-                                default -> text.setFill(Color.BLACK);
-                            }
+                        for (int i = 0; i < coloredSequence.runs.length; i++) {
+                            Text text = new Text(coloredSequence.runs[i]);
+                            text.setFill(coloredSequence.colors[i]);
                             textFlow.getChildren().add(text);
                         }
                         setGraphic(new Group(textFlow));
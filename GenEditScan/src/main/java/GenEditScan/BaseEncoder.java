@@ -0,0 +1,58 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.util.Arrays;
+
+/**
+ * Base encoder class (2-bit codes of the read bases).
+ * The codes are those of BitwiseOperation.dna2bit (T:0, C:1, A:2, G:3), and the other letters are coded 0 and
+ * flagged with the AMBIGUOUS bit, so the scan loop finds the windows to skip from the same lookup that packs
+ * the bases.
+ *
+ * @author NARO
+ */
+public final class BaseEncoder {
+    //========================================================================//
+    // Public parameters
+    //========================================================================//
+    /**
+     * flag of the bases other than A, C, G and T
+     */
+    public static final byte AMBIGUOUS = 4;
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * codes of the letters (BitwiseOperation.dna2bit and the flag)
+     */
+    private static final byte[] CODES = new byte[128];
+
+    static {
+        Arrays.fill(CODES, AMBIGUOUS);
+        CODES['T'] = 0;
+        CODES['C'] = 1;
+        CODES['A'] = 2;
+        CODES['G'] = 3;
+    }
+
+    private BaseEncoder() {
+    }
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Code of a base (the high bit of the letter is ignored, as in BitwiseOperation.dna2bit).
+     *
+     * @param base letter
+     * @return 2-bit code, with the AMBIGUOUS flag for the letters other than A, C, G and T
+     */
+    public static byte code(byte base) {
+        return CODES[base & 0x7f];
+    }
+}
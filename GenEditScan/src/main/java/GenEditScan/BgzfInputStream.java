@@ -0,0 +1,178 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Block compressed (BGZF) input stream class.
+ * Reads a file written by BgzfOutputStream, starting from any virtual offset.
+ *
+ * @author NARO
+ */
+public class BgzfInputStream extends InputStream {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * size of the gzip header with the "BC" extra field
+     */
+    private static final int HEADER_SIZE = 18;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final File file;
+    private final FileChannel channel;
+    private final Inflater inflater = new Inflater(true);
+    private final ByteBuffer block = ByteBuffer.allocate(0x10000).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] buffer = new byte[0x10000];
+    private int count = 0;              // bytes in the buffer
+    private int pos = 0;                // read position in the buffer
+    private long address = 0L;          // compressed address of the current block
+    private long nextAddress = 0L;      // compressed address of the next block
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Block compressed (BGZF) input stream class constructor.
+     *
+     * @param file BGZF file
+     * @throws IOException if the file could not be opened
+     */
+    public BgzfInputStream(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Move to the virtual offset.
+     *
+     * @param virtualOffset compressed block address &lt;&lt; 16 | offset in the block
+     * @throws IOException if the block could not be read
+     */
+    public void seek(long virtualOffset) throws IOException {
+        this.nextAddress = virtualOffset >>> 16;
+        this.count = 0;
+        this.pos = 0;
+        int offset = (int) (virtualOffset & 0xffff);
+        if (this.read_block() && offset > this.count) {
+            throw new IOException("Invalid offset in (" + this.file + ").");
+        }
+        this.pos = offset;
+    }
+
+    /**
+     * Get the virtual offset of the next byte.
+     *
+     * @return virtual offset
+     */
+    public long getVirtualOffset() {
+        return this.pos < this.count ? this.address << 16 | this.pos : this.nextAddress << 16;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.pos == this.count && !this.read_block()) {
+            return -1;
+        }
+        return this.buffer[this.pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (this.pos == this.count && !this.read_block()) {
+            return -1;
+        }
+        int n = Math.min(len, this.count - this.pos);
+        System.arraycopy(this.buffer, this.pos, b, off, n);
+        this.pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.inflater.end();
+        this.channel.close();
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Read the next non-empty block.
+     *
+     * @return true:read a block, false:end of file
+     * @throws IOException if the block could not be read
+     */
+    private boolean read_block() throws IOException {
+        while (true) {
+            this.address = this.nextAddress;
+            this.block.clear().limit(HEADER_SIZE);
+            if (!this.fill(this.address)) {
+                return false;
+            }
+            if ((this.block.get(0) & 0xff) != 0x1f || (this.block.get(1) & 0xff) != 0x8b
+                    || (this.block.get(3) & 0x04) == 0 || this.block.get(12) != 'B' || this.block.get(13) != 'C') {
+                throw new IOException("(" + this.file + ") is not a block compressed (BGZF) file.");
+            }
+            int blockSize = (this.block.getShort(16) & 0xffff) + 1;
+            this.block.limit(blockSize);
+            if (!this.fill(this.address + HEADER_SIZE)) {
+                throw new EOFException("Unexpected end of (" + this.file + ").");
+            }
+            this.nextAddress = this.address + blockSize;
+
+            int isize = this.block.getInt(blockSize - 4);
+            this.inflater.reset();
+            this.inflater.setInput(this.block.array(), HEADER_SIZE, blockSize - HEADER_SIZE - 8);
+            try {
+                this.count = this.inflater.inflate(this.buffer, 0, isize);
+            } catch (DataFormatException e) {
+                throw new IOException("(" + this.file + ") is corrupted.", e);
+            }
+            this.pos = 0;
+            if (this.count > 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Read from the file until the block buffer reaches its limit.
+     *
+     * @param position file position
+     * @return true:filled, false:end of file before any byte was read
+     * @throws IOException if the file could not be read
+     */
+    private boolean fill(long position) throws IOException {
+        int start = this.block.position();
+        while (this.block.hasRemaining()) {
+            int n = this.channel.read(this.block, position + this.block.position() - start);
+            if (n < 0) {
+                if (this.block.position() == start) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of (" + this.file + ").");
+            }
+        }
+        return true;
+    }
+}
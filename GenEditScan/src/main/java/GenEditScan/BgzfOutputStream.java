@@ -0,0 +1,215 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Block compressed (BGZF) output stream class.
+ * The data is written as a series of gzip members of up to 64 KB with the block size in the "BC" extra field,
+ * followed by an empty end-of-file block, so that the file can be read by gzip tools (zcat etc.)
+ * and also randomly accessed with virtual offsets (compressed block address &lt;&lt; 16 | offset in the block).
+ * Every block except the last holds exactly BLOCK_SIZE bytes, so that an uncompressed offset
+ * can be converted to a virtual offset after writing.
+ *
+ * @author NARO
+ */
+public class BgzfOutputStream extends OutputStream {
+    //========================================================================//
+    // Public data
+    //========================================================================//
+    /**
+     * Uncompressed size of a block.
+     */
+    public static final int BLOCK_SIZE = 0xff00;
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * maximum size of a compressed block
+     */
+    private static final int MAX_BLOCK_SIZE = 0x10000;
+
+    /**
+     * gzip header with the "BC" extra field (the block size is written at offset 16)
+     */
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, 0x08, 0x04, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0, 0
+    };
+
+    /**
+     * empty end-of-file block
+     */
+    private static final byte[] EOF_BLOCK = {
+            0x1f, (byte) 0x8b, 0x08, 0x04, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0,
+            3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final OutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc32 = new CRC32();
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private final byte[] block = new byte[MAX_BLOCK_SIZE];
+    private int count = 0;              // bytes in the buffer
+    private long address = 0L;          // compressed address of the next block
+    private long[] blockAddress = new long[1024];
+    private int blocks = 0;
+    private boolean closed = false;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Block compressed (BGZF) output stream class constructor.
+     *
+     * @param out underlying output stream
+     */
+    public BgzfOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.count == BLOCK_SIZE) {
+            this.write_block();
+        }
+        this.buffer[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (this.count == BLOCK_SIZE) {
+                this.write_block();
+            }
+            int n = Math.min(len, BLOCK_SIZE - this.count);
+            System.arraycopy(b, off, this.buffer, this.count, n);
+            this.count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Flush the underlying stream.
+     * The buffered data is not written as a short block, so that the blocks keep a fixed size.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    /**
+     * Write the remaining data and the end-of-file block, and close the stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            if (this.count > 0) {
+                this.write_block();
+            }
+            this.out.write(EOF_BLOCK);
+        } finally {
+            this.deflater.end();
+            this.out.close();
+        }
+    }
+
+    /**
+     * Convert an uncompressed offset of the written data into a virtual offset.
+     *
+     * @param offset uncompressed offset
+     * @return virtual offset
+     */
+    public long virtualOffset(long offset) {
+        int i = (int) (offset / BLOCK_SIZE);
+        if (i >= this.blocks) {
+            // End of the data
+            return i == this.blocks && offset % BLOCK_SIZE == 0 ? this.address << 16 : -1L;
+        }
+        return this.blockAddress[i] << 16 | offset % BLOCK_SIZE;
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Compress the buffer and write it as a block.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void write_block() throws IOException {
+        int size = this.deflate(Deflater.DEFAULT_COMPRESSION);
+        if (size < 0) {
+            size = this.deflate(Deflater.NO_COMPRESSION);
+        }
+        int blockSize = HEADER.length + size + 8;
+
+        System.arraycopy(HEADER, 0, this.block, 0, HEADER.length);
+        this.block[16] = (byte) (blockSize - 1);
+        this.block[17] = (byte) ((blockSize - 1) >>> 8);
+
+        this.crc32.reset();
+        this.crc32.update(this.buffer, 0, this.count);
+        int p = HEADER.length + size;
+        this.put_int(p, (int) this.crc32.getValue());
+        this.put_int(p + 4, this.count);
+        this.out.write(this.block, 0, blockSize);
+
+        if (this.blocks == this.blockAddress.length) {
+            this.blockAddress = Arrays.copyOf(this.blockAddress, this.blocks * 2);
+        }
+        this.blockAddress[this.blocks++] = this.address;
+        this.address += blockSize;
+        this.count = 0;
+    }
+
+    /**
+     * Deflate the buffer into the block.
+     *
+     * @param level compression level
+     * @return compressed size, or -1 if the data does not fit in a block
+     */
+    private int deflate(int level) {
+        int limit = MAX_BLOCK_SIZE - HEADER.length - 8;
+        this.deflater.reset();
+        this.deflater.setLevel(level);
+        this.deflater.setInput(this.buffer, 0, this.count);
+        this.deflater.finish();
+        int size = this.deflater.deflate(this.block, HEADER.length, limit);
+        return this.deflater.finished() ? size : -1;
+    }
+
+    /**
+     * Put a little-endian int into the block.
+     *
+     * @param p     position
+     * @param value value
+     */
+    private void put_int(int p, int value) {
+        this.block[p] = (byte) value;
+        this.block[p + 1] = (byte) (value >>> 8);
+        this.block[p + 2] = (byte) (value >>> 16);
+        this.block[p + 3] = (byte) (value >>> 24);
+    }
+}
@@ -4,6 +4,8 @@
  */
 package GenEditScan;
 
+import java.util.Collection;
+
 /**
  * Bitwise operation class.
  *
@@ -23,6 +25,16 @@ public class BitwiseOperation {
      */
     private final byte[] chunk;
 
+    /**
+     * k-mer
+     */
+    private final int kmer;
+
+    /**
+     * k-mer index of the dictionary, which confirms the windows passing the chunk array
+     */
+    private KmerIndex kmerIndex;
+
     //========================================================================//
     // Public function
     //========================================================================//
@@ -39,6 +51,16 @@ public class BitwiseOperation {
         this.dna2bit[65] = 2;   // A
         this.dna2bit[71] = 3;   // G
         this.chunk = new byte[options.getMax_chunk_array() + 1];  // +1 : signed language only
+        this.kmer = options.getKmer();
+    }
+
+    /**
+     * Create the k-mer index of the dictionary.
+     *
+     * @param mers k-mers of the dictionary
+     */
+    public void create_kmerIndex(Collection<String> mers) {
+        this.kmerIndex = new KmerIndex(mers, this.kmer, this.dna2bit);
     }
 
     // Getter
@@ -50,4 +72,8 @@ public class BitwiseOperation {
     public byte[] getChunk() {
         return this.chunk;
     }
+
+    public KmerIndex getKmerIndex() {
+        return this.kmerIndex;
+    }
 }
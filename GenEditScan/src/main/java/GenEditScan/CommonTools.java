@@ -189,6 +189,27 @@ public class CommonTools {
         return file;
     }
 
+    /**
+     * Select a BED file to save the significant regions of the graph.
+     *
+     * @param node base screen for dialog
+     * @return BED file name
+     */
+    public static File saveBedFile(Node node) {
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Save significant regions");
+        fc.setInitialDirectory(searchDir);
+        String timeStamp = new SimpleDateFormat("MMddHHmm", Locale.ENGLISH).format(new Date());
+        fc.setInitialFileName("regions_" + timeStamp);
+        fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("BED file", "*.bed"));
+
+        File file = fc.showSaveDialog(node.getScene().getWindow());
+        if (file != null) {
+            searchDir = file.getParentFile();
+        }
+        return file;
+    }
+
     /**
      * Select PDF or PNG format to save the graph to a file.
      *
@@ -241,7 +262,7 @@ public class CommonTools {
         FileChooser fc = new FileChooser();
         fc.setTitle("Select outside file");
         fc.setInitialDirectory(searchDir);
-        fc.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("outside file", "*.outside.txt"));
+        fc.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("outside file", "*.outside.txt", "*.outside.txt.gz"));
 
         File file = fc.showOpenDialog(node.getScene().getWindow());
         if (file != null) {
@@ -33,6 +33,11 @@ public class CountMerCallable implements Callable<Void> {
      */
     private final int isample;
 
+    /**
+     * sample order of the R2 file (-1:no R2 file)
+     */
+    private final int imate;
+
     /**
      * mutant file identifier
      */
@@ -51,9 +56,23 @@ public class CountMerCallable implements Callable<Void> {
      * @param node             base screen for dialog
      */
     public CountMerCallable(KmerBaseAbstract kmerBaseAbstract, boolean mutant, int loop, Node node) {
+        this(kmerBaseAbstract, mutant, loop, -1, node);
+    }
+
+    /**
+     * Count mer callable class constructor (R1 and R2 files of a pair).
+     *
+     * @param kmerBaseAbstract Abstract class of k-mer analysis
+     * @param mutant           true : mutant, false : wild type
+     * @param loop             sample order
+     * @param mate             sample order of the R2 file (-1 : no R2 file)
+     * @param node             base screen for dialog
+     */
+    public CountMerCallable(KmerBaseAbstract kmerBaseAbstract, boolean mutant, int loop, int mate, Node node) {
         this.kmerBaseAbstract = kmerBaseAbstract;
         this.isMutant = mutant;
         this.isample = loop;
+        this.imate = mate;
         this.mainPane = node;
     }
 
@@ -62,7 +81,9 @@ public class CountMerCallable implements Callable<Void> {
      */
     @Override
     public Void call() {
-        if (this.isMutant) {
+        if (this.imate >= 0) {
+            this.kmerBaseAbstract.read_pairFiles(this.isMutant, this.isample, this.imate, this.mainPane);
+        } else if (this.isMutant) {
             this.kmerBaseAbstract.read_mutantFiles(this.isample, this.mainPane);
         } else {
             this.kmerBaseAbstract.read_wildTypeFiles(this.isample, this.mainPane);
@@ -18,8 +18,6 @@ import java.util.Objects;
 import java.util.ResourceBundle;
 import java.util.concurrent.*;
 
-import static java.lang.Math.min;
-
 /**
  * Count mer controller class.
  *
@@ -51,6 +49,8 @@ public class CountMerController extends ControllerBase implements Initializable
     @FXML
     private CheckBox checkOutsideKmerID;        // Outside the k-mer sequences
     @FXML
+    private CheckBox checkCompressOutsideID;    // Compress the outside file
+    @FXML
     private Spinner<Double> spinnerFdrID;       // Threshold by FDR
     @FXML
     private Spinner<Integer> spinnerBasesID;    // Number of bases on each side
@@ -108,6 +108,16 @@ public class CountMerController extends ControllerBase implements Initializable
      */
     private final List<Future<?>> futureList = new ArrayList<>();
 
+    /**
+     * work scheduler (submission order of the fastq files)
+     */
+    private WorkScheduler workScheduler;
+
+    /**
+     * thread plan (files read in parallel and scan workers per file)
+     */
+    private ThreadPlan threadPlan;
+
     //========================================================================//
     // Local parameter
     //========================================================================//
@@ -155,6 +165,7 @@ public class CountMerController extends ControllerBase implements Initializable
         super.setTextField(this.outPrefixCountMerID, super.userConfiguration.getOut_prefix());
         super.setTextField(this.outDirectoryCountMerID, super.userConfiguration.getOutDirectory());
         super.setCheckBox(this.checkOutsideKmerID, super.userConfiguration.getOutsideKmerSequences());
+        super.setCheckBox(this.checkCompressOutsideID, super.userConfiguration.getCompressOutside());
         super.setSpinnerDouble(this.spinnerFdrID, super.userConfiguration.getThresholdFdr());
         super.setSpinner(this.spinnerBasesID, super.userConfiguration.getNumberOfBasesOnEachSide());
         super.setSpinner(this.spinnerThreadsID, super.userConfiguration.getThreads());
@@ -174,6 +185,7 @@ public class CountMerController extends ControllerBase implements Initializable
         super.userConfiguration.setOut_prefix(this.outPrefixCountMerID);
         super.userConfiguration.setOutDirectory(this.outDirectoryCountMerID);
         super.userConfiguration.setOutsideKmerSequences(this.checkOutsideKmerID);
+        super.userConfiguration.setCompressOutside(this.checkCompressOutsideID);
         super.userConfiguration.setThresholdFdr(this.spinnerFdrID);
         super.userConfiguration.setNumberOfBasesOnEachSide(this.spinnerBasesID);
         super.userConfiguration.setThreads(this.spinnerThreadsID);
@@ -183,8 +195,7 @@ public class CountMerController extends ControllerBase implements Initializable
      * Set an initial value for the maximum number of threads used.
      */
     public void setMaxThreads() {
-        int maxThreads = min(Runtime.getRuntime().availableProcessors(), 8);
-        this.setSpinner(this.spinnerThreadsID, maxThreads);
+        this.setSpinner(this.spinnerThreadsID, ThreadPlan.default_threads());
     }
 
     /**
@@ -202,14 +213,31 @@ public class CountMerController extends ControllerBase implements Initializable
             if (newValue) {
                 this.spinnerFdrID.setDisable(false);
                 this.spinnerBasesID.setDisable(false);
+                this.checkCompressOutsideID.setDisable(false);
             } else {
                 this.spinnerFdrID.setDisable(true);
                 this.spinnerBasesID.setDisable(true);
+                this.checkCompressOutsideID.setDisable(true);
             }
         });
 
         // Maximum number of threads
         this.spinnerThreadsID.valueProperty().addListener((observe, oldVal, newVal) -> this.threads = newVal);
+
+        // Thread plan of the current files
+        Tooltip planTooltip = new Tooltip();
+        planTooltip.setOnShowing(event -> {
+            List<String> mutantFiles = CommonTools.getTextArea(this.mutantFilesID);
+            List<String> wildTypeFiles = CommonTools.getTextArea(this.wildTypeFilesID);
+            boolean pairedFiles = "files".equals(super.userConfiguration.getPairedEnd());
+            List<String> fastqFiles = new ArrayList<>(mutantFiles);
+            fastqFiles.addAll(wildTypeFiles);
+            int jobs = WorkScheduler.count_jobs(mutantFiles, pairedFiles)
+                    + WorkScheduler.count_jobs(wildTypeFiles, pairedFiles);
+            planTooltip.setText(new ThreadPlan(this.spinnerThreadsID.getValue(), fastqFiles, jobs,
+                    super.userConfiguration.getEarlyStop() > 0).toString());
+        });
+        this.spinnerThreadsID.setTooltip(planTooltip);
     }
 
     //========================================================================//
@@ -291,9 +319,27 @@ public class CountMerController extends ControllerBase implements Initializable
                         this.outPrefixCountMerID.getText(),
                         new File(this.outDirectoryCountMerID.getText()),
                         this.checkOutsideKmerID.isSelected(),
+                        this.checkCompressOutsideID.isSelected(),
                         this.spinnerThreadsID.getValue(),
                         this.messageID,
                         this.progressID);
+                if (!this.setAdvancedOptions(options)) {
+                    this.executeCountMerID.setDisable(false);
+                    this.stopCountMerID.setDisable(true);
+                    return null;
+                }
+                this.workScheduler = new WorkScheduler(options);
+                this.threadPlan = options.getThreadPlan();
+                if (!this.threadPlan.fits()) {
+                    String message = "EARLY_STOP reads all the " + this.threadPlan.getFiles()
+                            + " files (or pairs) at once, which needs more threads or memory than the plan allows. "
+                            + "Increase the maximum number of threads, or disable EARLY_STOP.";
+                    CommonTools.runTimeErrorMessage(message, "red", this.mainPaneID);
+                    this.executeCountMerID.setDisable(false);
+                    this.stopCountMerID.setDisable(true);
+                    return null;
+                }
+                options.setRuntimeMessage(this.threadPlan.toString());
 
                 // Bitwise operation
                 BitwiseOperation bitwiseOperation = new BitwiseOperation(options);
@@ -311,14 +357,17 @@ public class CountMerController extends ControllerBase implements Initializable
                 }
 
                 TextField statisticsTextField = this.kmerMatch.create_statisticsFile(this.mainPaneID);
+                boolean completed = true;
 
                 if (Objects.nonNull(statisticsTextField)) {
                     TextField outsideTextField;
                     if (options.getCheckOutsideKmer()) {
                         // Extension analysis of k-mer
-                        this.kmerExtension = new KmerExtension(options, bitwiseOperation, statisticsFile);
+                        this.kmerExtension = new KmerExtension(options, bitwiseOperation,
+                                this.kmerMatch.getStatisticsFiles());
                         if (this.kmerExtension.set_merCounter()) {
                             if (!this.kmerExtensionControl()) {
+                                this.kmerMatch.join_merFreqFiles(this.mainPaneID);
                                 this.executeCountMerID.setDisable(false);
                                 this.stopCountMerID.setDisable(false);
                                 return null;
@@ -331,6 +380,12 @@ public class CountMerController extends ControllerBase implements Initializable
                         outsideTextField = null;
                     }
 
+                    // Wait for the merFreq files written in the background.
+                    if (!this.kmerMatch.join_merFreqFiles(this.mainPaneID)) {
+                        // The statistics are complete, so the graph is still drawn.
+                        completed = false;
+                    }
+
                     Platform.runLater(() -> {
                         this.executeCountMerID.setDisable(false);
                         this.stopCountMerID.setDisable(true);
@@ -348,7 +403,8 @@ public class CountMerController extends ControllerBase implements Initializable
                     return null;
                 }
 
-                Platform.runLater(() -> options.setRuntimeMessage("Completed."));
+                String message = completed ? "Completed." : "Completed, but the merFreq files could not be written.";
+                Platform.runLater(() -> options.setRuntimeMessage(message));
                 return null;
             };
             ExecutorService task_service = Executors.newSingleThreadExecutor();
@@ -428,6 +484,41 @@ public class CountMerController extends ControllerBase implements Initializable
         return true;
     }
 
+    /**
+     * Set the advanced options read from the configuration file.
+     *
+     * @param options Execution options class
+     * @return true:normal, false:an option cannot be used
+     */
+    private boolean setAdvancedOptions(Options options) {
+        options.setMultiConstruct(super.userConfiguration.getMultiConstruct());
+        options.setRegionFile(super.userConfiguration.getRegionFile());
+        options.setHostReference(super.userConfiguration.getHostReference());
+        options.setHostKmerDrop(super.userConfiguration.getHostKmerDrop());
+        options.setStripedCounts(super.userConfiguration.getStripedCounts());
+        options.setOffHeapMemory(super.userConfiguration.getOffHeapMemory());
+        options.setTrimQuality(super.userConfiguration.getTrimQuality());
+        options.setTrimWindow(super.userConfiguration.getTrimWindow());
+        options.setMaskQuality(super.userConfiguration.getMaskQuality());
+        options.setTrimAdapter(super.userConfiguration.getTrimAdapter());
+        options.setPairedEnd(super.userConfiguration.getPairedEnd());
+        options.setDuplicateCache(super.userConfiguration.getDuplicateCache());
+        options.setEarlyStop(super.userConfiguration.getEarlyStop());
+        options.setEarlyStopTolerance(super.userConfiguration.getEarlyStopTolerance());
+        options.setPreview(super.userConfiguration.getPreview());
+        options.setPreviewSeed(super.userConfiguration.getPreviewSeed());
+
+        // The off-heap flank tables are direct buffers, limited by the JVM (the maximum heap size by default).
+        long directLimit = Options.direct_memoryLimit() >> 20;
+        if (options.getOffHeapMemory() > directLimit) {
+            String message = "OFFHEAP_MEMORY (" + options.getOffHeapMemory() + " MB) exceeds the direct memory limit "
+                    + "of the JVM (" + directLimit + " MB). Decrease it, or raise -XX:MaxDirectMemorySize.";
+            CommonTools.runTimeErrorMessage(message, "red", this.mainPaneID);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Control k-mer match analysis.
      *
@@ -436,19 +527,16 @@ public class CountMerController extends ControllerBase implements Initializable
     private boolean kmerMatchControl() {
         this.futureList.clear();
         this.threads = this.spinnerThreadsID.getValue();
-        final int npool = min(this.threads, this.mutant_files.size() + this.wildType_files.size());
+        final int npool = this.threadPlan.getFiles();
+        final long start = System.nanoTime();
 
         // Execute count mer
         this.service = Executors.newFixedThreadPool(npool);
-        for (int i = 0; i < this.mutant_files.size(); i++) {
+        // Largest files first
+        for (WorkScheduler.Job job : this.workScheduler.getJobs()) {
             // start asynchronous threads that create annotation reports
-            Future<?> future = this.service.submit(new CountMerCallable(this.kmerMatch, true, i, this.mainPaneID));
-            this.futureList.add(future);
-        }
-
-        for (int i = 0; i < this.wildType_files.size(); i++) {
-            // start asynchronous threads that create annotation reports
-            Future<?> future = this.service.submit(new CountMerCallable(this.kmerMatch, false, i, this.mainPaneID));
+            Future<?> future = this.service.submit(this.workScheduler.timed(job,
+                    new CountMerCallable(this.kmerMatch, job.mutant, job.index, job.mate, this.mainPaneID)));
             this.futureList.add(future);
         }
 
@@ -463,6 +551,8 @@ public class CountMerController extends ControllerBase implements Initializable
             }
         }
         this.service.shutdown();
+        this.write_scheduleReport("K-mer match", npool, System.nanoTime() - start,
+                this.kmerMatch.getScanCounters());
         return true;
     }
 
@@ -473,19 +563,16 @@ public class CountMerController extends ControllerBase implements Initializable
      */
     private boolean kmerExtensionControl() {
         this.futureList.clear();
-        final int npool = min(this.threads, this.mutant_files.size() + this.wildType_files.size());
+        final int npool = this.threadPlan.getFiles();
+        final long start = System.nanoTime();
 
         // execute count mer
         this.service = Executors.newFixedThreadPool(npool);
-        for (int i = 0; i < this.mutant_files.size(); i++) {
+        // Largest files first
+        for (WorkScheduler.Job job : this.workScheduler.getJobs()) {
             // start asynchronous threads that create annotation reports
-            Future<?> future = this.service.submit(new CountMerCallable(this.kmerExtension, true, i, this.mainPaneID));
-            this.futureList.add(future);
-        }
-
-        for (int i = 0; i < this.wildType_files.size(); i++) {
-            // start asynchronous threads that create annotation reports
-            Future<?> future = this.service.submit(new CountMerCallable(this.kmerExtension, false, i, this.mainPaneID));
+            Future<?> future = this.service.submit(this.workScheduler.timed(job,
+                    new CountMerCallable(this.kmerExtension, job.mutant, job.index, job.mate, this.mainPaneID)));
             this.futureList.add(future);
         }
 
@@ -500,9 +587,26 @@ public class CountMerController extends ControllerBase implements Initializable
             }
         }
         this.service.shutdown();
+        this.write_scheduleReport("K-mer extension", npool, System.nanoTime() - start,
+                this.kmerExtension.getScanCounters());
         return true;
     }
 
+    /**
+     * Write the predicted and actual critical paths of the phase.
+     *
+     * @param phase    phase name
+     * @param threads  files read in parallel
+     * @param nanos    elapsed time of the phase
+     * @param counters scan counters of the phase
+     */
+    private void write_scheduleReport(String phase, int threads, long nanos, ScanCounters counters) {
+        if (Objects.isNull(this.workScheduler.write_report(phase, threads, nanos, counters))) {
+            String message = "Could not write the schedule report.";
+            CommonTools.runTimeErrorMessage(message, "green", this.mainPaneID);
+        }
+    }
+
     /**
      * Terminate the thread.
      */
@@ -514,5 +618,8 @@ public class CountMerController extends ControllerBase implements Initializable
         }
         this.futureList.clear();
         this.service.shutdownNow();
+        if (Objects.nonNull(this.kmerMatch)) {
+            this.kmerMatch.cancel_merFreqFiles();
+        }
     }
 }
@@ -0,0 +1,262 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coverage pyramid class (binned summaries of the statistics.txt file for the graph view).
+ * Level 0 holds the positions themselves, and each level above halves the previous one: a bin of level L
+ * covers 2^L consecutive positions. A bin keeps the maximum of the k-mer counts and the G statistic and the
+ * minimum of the p-value, the FDR and the Bonferroni value, so a peak or a significant position is never lost
+ * when the graph is zoomed out. The graph draws the level with at most MAX_POINTS bins in the visible range,
+ * so the drawing time does not depend on the length of the vector.
+ * The levels form a segment tree, so the maximum or minimum over any range of positions (the autoscaling of the
+ * y-axis) is found in O(log n) bins.
+ *
+ * @author NARO
+ */
+public class CoveragePyramid {
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final List<int[]> mutantMax = new ArrayList<>();
+    private final List<int[]> wildTypeMax = new ArrayList<>();
+    private final List<double[]> gvalueMax = new ArrayList<>();
+    private final List<double[]> pvalueMin = new ArrayList<>();
+    private final List<double[]> fdrMin = new ArrayList<>();
+    private final List<double[]> bonferroniMin = new ArrayList<>();
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Coverage pyramid class constructor.
+     *
+     * @param mutant     mutant counts per position
+     * @param wildType   wild type counts per position
+     * @param gvalue     G statistic per position
+     * @param pvalue     p-value per position
+     * @param fdr        FDR per position
+     * @param bonferroni Bonferroni value per position
+     */
+    public CoveragePyramid(int[] mutant, int[] wildType, double[] gvalue, double[] pvalue, double[] fdr,
+                           double[] bonferroni) {
+        this.mutantMax.add(mutant);
+        this.wildTypeMax.add(wildType);
+        this.gvalueMax.add(gvalue);
+        this.pvalueMin.add(pvalue);
+        this.fdrMin.add(fdr);
+        this.bonferroniMin.add(bonferroni);
+        for (int bins = (mutant.length + 1) / 2; mutant.length > 1; bins = (bins + 1) / 2) {
+            this.mutantMax.add(max(this.mutantMax.getLast(), bins));
+            this.wildTypeMax.add(max(this.wildTypeMax.getLast(), bins));
+            this.gvalueMax.add(max(this.gvalueMax.getLast(), bins));
+            this.pvalueMin.add(min(this.pvalueMin.getLast(), bins));
+            this.fdrMin.add(min(this.fdrMin.getLast(), bins));
+            this.bonferroniMin.add(min(this.bonferroniMin.getLast(), bins));
+            if (bins == 1) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Lowest level with at most the given number of bins over a range of positions.
+     *
+     * @param positions number of positions in the range
+     * @param maxPoints maximum number of bins
+     * @return level
+     */
+    public int level(int positions, int maxPoints) {
+        int level = 0;
+        while (level < this.levels() - 1 && (positions + (1 << level) - 1) >> level > maxPoints) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Maximum of the mutant and wild type counts over a range of positions.
+     *
+     * @param from first position index
+     * @param to   end position index
+     * @return maximum count, 0 if the range is empty
+     */
+    public int maxCount(int from, int to) {
+        return Math.max(max_int(this.mutantMax, from, to), max_int(this.wildTypeMax, from, to));
+    }
+
+    /**
+     * Maximum of the G statistic over a range of positions.
+     *
+     * @param from first position index
+     * @param to   end position index
+     * @return maximum, 0.0 if the range is empty
+     */
+    public double maxGvalue(int from, int to) {
+        return extreme(this.gvalueMax, from, to, true);
+    }
+
+    /**
+     * Minimum of the p-value over a range of positions.
+     *
+     * @param from first position index
+     * @param to   end position index
+     * @return minimum, 1.0 if the range is empty
+     */
+    public double minPvalue(int from, int to) {
+        return extreme(this.pvalueMin, from, to, false);
+    }
+
+    /**
+     * Minimum of the FDR over a range of positions.
+     *
+     * @param from first position index
+     * @param to   end position index
+     * @return minimum, 1.0 if the range is empty
+     */
+    public double minFdr(int from, int to) {
+        return extreme(this.fdrMin, from, to, false);
+    }
+
+    /**
+     * Minimum of the Bonferroni value over a range of positions.
+     *
+     * @param from first position index
+     * @param to   end position index
+     * @return minimum, 1.0 if the range is empty
+     */
+    public double minBonferroni(int from, int to) {
+        return extreme(this.bonferroniMin, from, to, false);
+    }
+
+    // Getter (the bins of a level)
+
+    public int levels() {
+        return this.mutantMax.size();
+    }
+
+    public int[] getMutant(int level) {
+        return this.mutantMax.get(level);
+    }
+
+    public int[] getWildType(int level) {
+        return this.wildTypeMax.get(level);
+    }
+
+    public double[] getGvalue(int level) {
+        return this.gvalueMax.get(level);
+    }
+
+    public double[] getPvalue(int level) {
+        return this.pvalueMin.get(level);
+    }
+
+    public double[] getFdr(int level) {
+        return this.fdrMin.get(level);
+    }
+
+    public double[] getBonferroni(int level) {
+        return this.bonferroniMin.get(level);
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Maximum over a range of positions (the bins at the ends of the range are taken at each level,
+     * and the rest of the range moves up a level).
+     *
+     * @param levels bins of the levels
+     * @param from   first position index
+     * @param to     end position index
+     * @return maximum, 0 if the range is empty
+     */
+    private static int max_int(List<int[]> levels, int from, int to) {
+        int value = 0;
+        for (int level = 0; from < to; level++, from >>= 1, to >>= 1) {
+            int[] bins = levels.get(level);
+            if ((from & 1) == 1) {
+                value = Math.max(value, bins[from++]);
+            }
+            if ((to & 1) == 1) {
+                value = Math.max(value, bins[--to]);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Maximum or minimum over a range of positions.
+     *
+     * @param levels bins of the levels
+     * @param from   first position index
+     * @param to     end position index
+     * @param max    true:maximum (0.0 if the range is empty), false:minimum (1.0 if the range is empty)
+     * @return maximum or minimum
+     */
+    private static double extreme(List<double[]> levels, int from, int to, boolean max) {
+        double value = max ? 0.0 : 1.0;
+        for (int level = 0; from < to; level++, from >>= 1, to >>= 1) {
+            double[] bins = levels.get(level);
+            if ((from & 1) == 1) {
+                value = max ? Math.max(value, bins[from++]) : Math.min(value, bins[from++]);
+            }
+            if ((to & 1) == 1) {
+                value = max ? Math.max(value, bins[--to]) : Math.min(value, bins[--to]);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Maximum of each pair of bins.
+     *
+     * @param lower bins of the level below
+     * @param bins  number of bins
+     * @return bins of the level
+     */
+    private static int[] max(int[] lower, int bins) {
+        int[] upper = new int[bins];
+        for (int i = 0; i < bins; i++) {
+            upper[i] = 2 * i + 1 < lower.length ? Math.max(lower[2 * i], lower[2 * i + 1]) : lower[2 * i];
+        }
+        return upper;
+    }
+
+    /**
+     * Maximum of each pair of bins.
+     *
+     * @param lower bins of the level below
+     * @param bins  number of bins
+     * @return bins of the level
+     */
+    private static double[] max(double[] lower, int bins) {
+        double[] upper = new double[bins];
+        for (int i = 0; i < bins; i++) {
+            upper[i] = 2 * i + 1 < lower.length ? Math.max(lower[2 * i], lower[2 * i + 1]) : lower[2 * i];
+        }
+        return upper;
+    }
+
+    /**
+     * Minimum of each pair of bins.
+     *
+     * @param lower bins of the level below
+     * @param bins  number of bins
+     * @return bins of the level
+     */
+    private static double[] min(double[] lower, int bins) {
+        double[] upper = new double[bins];
+        for (int i = 0; i < bins; i++) {
+            upper[i] = 2 * i + 1 < lower.length ? Math.min(lower[2 * i], lower[2 * i + 1]) : lower[2 * i];
+        }
+        return upper;
+    }
+}
@@ -14,17 +14,19 @@ import javafx.scene.chart.XYChart;
 import javafx.scene.control.TextField;
 import javafx.scene.input.MouseButton;
 
-import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
-import java.nio.file.Files;
 import java.util.*;
 
 /**
  * Graph drawing process class.
+ * The statistics.txt file of a vector restricted to regions (see VectorSequence) has gaps between the positions:
+ * the significant runs are cut at the gaps, and their sequences end at the gaps.
+ * The series are drawn from the level of the coverage pyramid (see CoveragePyramid) with at most MAX_POINTS bins
+ * in the visible range of the x-axis, and the significant runs are taken from the index of the runs kept with
+ * the data (see SignificantRuns).
  *
  * @author NARO
  */
@@ -45,19 +47,18 @@ public class DrawGraph {
     //========================================================================//
     // Local parameter
     //========================================================================//
-    private final List<Integer> position = new ArrayList<>();
-    private String vectorArray;
-    private final List<Integer> mutantCount = new ArrayList<>();
-    private final List<Integer> wildTypeCount = new ArrayList<>();
-    private final List<Double> gvalue = new ArrayList<>();
-    private final List<Double> pvalue = new ArrayList<>();
-    private final List<Double> fdr = new ArrayList<>();
-    private final List<Double> bonferroni = new ArrayList<>();
-    private int kmer = 0;
-    private final Map<Integer, Integer> sequenceIndex = new HashMap<>();
-    private final List<String> sequenceList = new ArrayList<>();
-
-    private final float FLOAT_LIMIT = 1.0E-38F;
+    private GraphData data;
+    private SignificantRuns runs;
+    private int level = 0;                  // level of the coverage pyramid drawn
+    private int firstBin = 0;               // bins of the level in the visible range
+    private int endBin = 0;
+    private int selectedIndex = 0;          // y-axis title identification index of the lower chart
+    private double lowerThreshold = 0.0;    // threshold drawn on the lower chart
+
+    /**
+     * maximum number of points of a series
+     */
+    private static final int MAX_POINTS = 4096;
 
     //========================================================================//
     // Public function
@@ -99,143 +100,110 @@ public class DrawGraph {
      * @return true:normal, false:abnormal
      */
     public boolean drawStatistics(int selectedIndex) {
-        File file = new File(this.statisticsFile);
-        try (BufferedReader br = Files.newBufferedReader(file.toPath())) {
-            int iPos = 0;
-            int iSeq = 1;
-            int iMutant = 2;
-            int iWildType = 3;
-            int iGval = 4;
-            int iPval = 5;
-            int iFDR = 6;
-            int iBonferroni = 7;
-
-            StringBuilder sequence = new StringBuilder();
-            String str = br.readLine();
-            if (str.startsWith("#K-mer")) {
-                this.kmer = Integer.parseInt(str.split("\t")[1]);
-                str = br.readLine();
-            } else {
-                return false;
-            }
-
-            if (str.startsWith("#Pos")) {
-                List<String> headers = new ArrayList<>(Arrays.asList(str.split("\t")));
-                if (headers.contains("#Pos")) {
-                    iPos = headers.indexOf("#Pos");
-                }
-                if (headers.contains("Seq")) {
-                    iSeq = headers.indexOf("Seq");
-                }
-                if (headers.contains("Mutant")) {
-                    iMutant = headers.indexOf("Mutant");
-                }
-                if (headers.contains("WildType")) {
-                    iWildType = headers.indexOf("WildType");
-                }
-                if (headers.contains("Gval")) {
-                    iGval = headers.indexOf("Gval");
-                }
-                if (headers.contains("Pval")) {
-                    iPval = headers.indexOf("Pval");
-                }
-                if (headers.contains("FDR")) {
-                    iFDR = headers.indexOf("FDR");
-                }
-                if (headers.contains("Bonferroni")) {
-                    iBonferroni = headers.indexOf("Bonferroni");
-                }
-            }
-
-            while ((str = br.readLine()) != null) {
-                String[] posLine = str.split("\t");
-                this.position.add(Integer.parseInt(posLine[iPos]));
-                sequence.append(posLine[iSeq]);
-                this.mutantCount.add(Integer.parseInt(posLine[iMutant]));
-                this.wildTypeCount.add(Integer.parseInt(posLine[iWildType]));
-                this.gvalue.add(Math.max(Double.parseDouble(posLine[iGval]), 0.0));
-                this.pvalue.add(Math.max(Double.parseDouble(posLine[iPval]), FLOAT_LIMIT));
-                this.fdr.add(Math.max(Double.parseDouble(posLine[iFDR]), FLOAT_LIMIT));
-                this.bonferroni.add(Math.max(Double.parseDouble(posLine[iBonferroni]), FLOAT_LIMIT));
-            }
-            this.vectorArray = sequence.append(sequence, 0, this.kmer - 1).toString();
-
-            // Upper chart wild type (first)
-            this.integerSeries(this.wildTypeColor, this.wildTypeCount);
+        try {
+            this.data = GraphData.read(this.statisticsFile);
+        } catch (IOException e) {
+            return false;
+        }
+        if (this.data == null) {
+            return false;
+        }
+        this.markPreview(this.data.header);
+        this.set_visibleBins();
+        this.selectedIndex = selectedIndex;
+        this.lowerThreshold = selectedIndex == 3 ? this.thresholdValue : -Math.log10(this.thresholdValue);
+        CoveragePyramid pyramid = this.data.pyramid;
+
+        // Upper chart wild type (first)
+        this.integerSeries(this.wildTypeColor, pyramid.getWildType(this.level));
+
+        // Upper chart mutant (second)
+        this.integerSeries(this.mutantColor, pyramid.getMutant(this.level));
+
+        switch (selectedIndex) {
+            case 0:
+                double threshold0 = -Math.log10(this.thresholdValue);
+                this.doubleSeriesThreshold(threshold0);
+                this.runs = this.data.significantRuns(SignificantRuns.FDR, this.thresholdValue);
+                this.doubleSeriesMultiColors(minusLog10(pyramid.getFdr(this.level), this.firstBin, this.endBin),
+                        threshold0);
+                break;
+            case 1:
+                double threshold1 = -Math.log10(this.thresholdValue);
+                this.doubleSeriesThreshold(threshold1);
+                this.runs = this.data.significantRuns(SignificantRuns.BONFERRONI, this.thresholdValue);
+                this.doubleSeriesMultiColors(minusLog10(pyramid.getBonferroni(this.level), this.firstBin, this.endBin),
+                        threshold1);
+                break;
+            case 2:
+                double threshold2 = -Math.log10(this.thresholdValue);
+                this.doubleSeriesThreshold(threshold2);
+                this.runs = this.data.significantRuns(SignificantRuns.PVALUE, this.thresholdValue);
+                this.doubleSeriesMultiColors(minusLog10(pyramid.getPvalue(this.level), this.firstBin, this.endBin),
+                        threshold2);
+                break;
+            case 3:
+                this.doubleSeriesThreshold(this.thresholdValue);
+                this.runs = this.data.significantRuns(SignificantRuns.GVALUE, this.thresholdValue);
+                this.doubleSeriesMultiColors(Arrays.copyOfRange(pyramid.getGvalue(this.level), this.firstBin,
+                        this.endBin), this.thresholdValue);
+                break;
+            default:
+                break;
+        }
 
-            // Upper chart mutant (second)
-            this.integerSeries(this.mutantColor, this.mutantCount);
+        NumberAxis xAxis = (NumberAxis) this.lineChartUpper.getXAxis();
+        if (!xAxis.isAutoRanging()) {
+            double xAxisMin = xAxis.getLowerBound();
+            double xAxisMax = xAxis.getUpperBound();
 
-            switch (selectedIndex) {
-                case 0:
-                    List<Double> value0 = minusLog10(this.fdr);
-                    double threshold0 = -Math.log10(this.thresholdValue);
-                    this.doubleSeriesThreshold(threshold0);
-                    this.highValueSequence(value0, threshold0);
-                    this.doubleSeriesMultiColors(value0, threshold0);
-                    break;
-                case 1:
-                    List<Double> value1 = minusLog10(this.bonferroni);
-                    double threshold1 = -Math.log10(this.thresholdValue);
-                    this.doubleSeriesThreshold(threshold1);
-                    this.highValueSequence(value1, threshold1);
-                    this.doubleSeriesMultiColors(value1, threshold1);
-                    break;
-                case 2:
-                    List<Double> value2 = minusLog10(this.pvalue);
-                    double threshold2 = -Math.log10(this.thresholdValue);
-                    this.doubleSeriesThreshold(threshold2);
-                    this.highValueSequence(value2, threshold2);
-                    this.doubleSeriesMultiColors(value2, threshold2);
-                    break;
-                case 3:
-                    this.doubleSeriesThreshold(this.thresholdValue);
-                    this.highValueSequence(this.gvalue, this.thresholdValue);
-                    this.doubleSeriesMultiColors(this.gvalue, this.thresholdValue);
-                    break;
-                default:
-                    break;
+            // Y-axis (upper)
+            NumberAxis yAxisUpper = (NumberAxis) this.lineChartUpper.getYAxis();
+            if (yAxisUpper.isAutoRanging()) {
+                this.adjustYaxisRange(this.lineChartUpper, xAxisMin, xAxisMax);
             }
 
-            NumberAxis xAxis = (NumberAxis) this.lineChartUpper.getXAxis();
-            if (!xAxis.isAutoRanging()) {
-                double xAxisMin = xAxis.getLowerBound();
-                double xAxisMax = xAxis.getUpperBound();
-
-                // Y-axis (upper)
-                NumberAxis yAxisUpper = (NumberAxis) this.lineChartUpper.getYAxis();
-                if (yAxisUpper.isAutoRanging()) {
-                    this.adjustYaxisRange(this.lineChartUpper, xAxisMin, xAxisMax);
-                }
-
-                // Y-axis (lower)
-                NumberAxis yAxisLower = (NumberAxis) this.areaChartLower.getYAxis();
-                if (yAxisLower.isAutoRanging()) {
-                    this.adjustYaxisRange(this.areaChartLower, xAxisMin, xAxisMax);
-                }
-
+            // Y-axis (lower)
+            NumberAxis yAxisLower = (NumberAxis) this.areaChartLower.getYAxis();
+            if (yAxisLower.isAutoRanging()) {
+                this.adjustYaxisRange(this.areaChartLower, xAxisMin, xAxisMax);
             }
 
-            return true;
-        } catch (IOException e) {
-            return false;
         }
+
+        return true;
     }
 
     //========================================================================//
     // Private function
     //========================================================================//
 
+    /**
+     * Mark the graph of a preview run (the statistics of a sample of the reads).
+     *
+     * @param header header line of the statistics.txt file
+     */
+    private void markPreview(String[] header) {
+        String title = null;
+        for (int i = 2; i + 1 < header.length; i += 2) {
+            if (header[i].equals("Preview")) {
+                double fraction = Double.parseDouble(header[i + 1]);
+                title = String.format("PREVIEW (%.3g%% of the reads)", fraction * 100.0);
+            }
+        }
+        this.lineChartUpper.setTitle(title);
+    }
+
     /**
      * LineChart drawing process for K-mer counts.
      *
      * @param color color
-     * @param value y-axis dat
+     * @param value y-axis data per bin of the level
      */
-    private void integerSeries(String color, List<Integer> value) {
+    private void integerSeries(String color, int[] value) {
         ObservableList<XYChart.Data<Number, Number>> data = FXCollections.observableArrayList();
-        for (int i = 0; i < this.position.size(); i++) {
-            data.add(new XYChart.Data<>(this.position.get(i), value.get(i)));
+        for (int bin = this.firstBin; bin < this.endBin; bin++) {
+            data.add(new XYChart.Data<>(this.binPosition(bin), value[bin]));
         }
 
         XYChart.Series<Number, Number> series = new XYChart.Series<>(data);
@@ -253,8 +221,8 @@ public class DrawGraph {
      */
     private void doubleSeriesThreshold(double threshold) {
         ObservableList<XYChart.Data<Number, Number>> data = FXCollections.observableArrayList();
-        data.add(new XYChart.Data<>(this.position.getFirst(), threshold));
-        data.add(new XYChart.Data<>(this.position.getLast(), threshold));
+        data.add(new XYChart.Data<>(this.data.position[0], threshold));
+        data.add(new XYChart.Data<>(this.data.position[this.data.size - 1], threshold));
         XYChart.Series<Number, Number> series;
         series = new XYChart.Series<>(data);
         this.areaChartLower.getData().add(series);
@@ -270,68 +238,87 @@ public class DrawGraph {
     }
 
     /**
-     * Get k-mer sequences that exceed the threshold.
-     *
-     * @param value     test value
-     * @param threshold threshold of test value
+     * Set the level of the coverage pyramid and its bins in the visible range of the x-axis
+     * (with a position beyond each end, so the lines run to the edges).
      */
-    private void highValueSequence(List<Double> value, double threshold) {
-        boolean status = false;
-        int startIndex = -1;
-        if (value.getFirst() >= threshold) {
-            status = true;
-            startIndex = 0;
+    private void set_visibleBins() {
+        int from = 0;
+        int to = this.data.size;
+        NumberAxis xAxis = (NumberAxis) this.lineChartUpper.getXAxis();
+        if (!xAxis.isAutoRanging()) {
+            from = Math.min(Math.max(this.countPositions(xAxis.getLowerBound()) - 2, 0), this.data.size - 1);
+            to = Math.max(Math.min(this.countPositions(xAxis.getUpperBound()) + 1, this.data.size), from + 1);
         }
+        this.level = this.data.pyramid.level(to - from, MAX_POINTS);
+        this.firstBin = from >> this.level;
+        this.endBin = ((to - 1) >> this.level) + 1;
+    }
 
-        for (int i = 1; i < this.position.size() - 1; i++) {
-            if (status && value.get(i) < threshold) {
-                status = false;
-                int idx = this.sequenceList.size();
-                for (int j = startIndex; j < i; j++) {
-                    this.sequenceIndex.put(j, idx);
-                }
-                this.sequenceList.add(this.vectorArray.substring(startIndex, i + this.kmer - 1));
-            } else if (!status && value.get(i) >= threshold) {
-                startIndex = i;
-                status = true;
+    /**
+     * Count the positions up to a coordinate of the x-axis.
+     *
+     * @param x coordinate value of X
+     * @return number of positions
+     */
+    private int countPositions(double x) {
+        int low = 0;
+        int high = this.data.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.data.position[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
+        return low;
+    }
 
-        int lastIdx = this.position.size() - 1;
-        if (status && value.get(lastIdx) < threshold) {
-            int idx = this.sequenceList.size();
-            for (int j = startIndex; j < lastIdx; j++) {
-                this.sequenceIndex.put(j, idx);
-            }
-            this.sequenceList.add(this.vectorArray.substring(startIndex, lastIdx + this.kmer - 1));
-        } else if (!status && value.get(lastIdx) >= threshold) {
-            startIndex = lastIdx;
-            int idx = this.sequenceList.size();
-            this.sequenceIndex.put(startIndex, idx);
-            this.sequenceList.add(this.vectorArray.substring(lastIdx, lastIdx + this.kmer));
+    /**
+     * Coordinate of a bin of the level on the x-axis (the middle of its positions).
+     *
+     * @param bin bin index
+     * @return coordinate value of X
+     */
+    private Number binPosition(int bin) {
+        if (this.level == 0) {
+            return this.data.position[bin];
         }
+        int first = bin << this.level;
+        int last = Math.min((bin + 1) << this.level, this.data.size) - 1;
+        return (this.data.position[first] + this.data.position[last]) / 2.0;
+    }
+
+    /**
+     * Last significant run within a bin of the level.
+     *
+     * @param bin bin index
+     * @return run index, -1 if none
+     */
+    private int significantRun(int bin) {
+        return this.runs.find(bin << this.level, Math.min((bin + 1) << this.level, this.data.size));
     }
 
     /**
      * Process of drawing a LineChart of the G statistic.
      *
-     * @param value     test value
+     * @param value     test value per bin of the visible range
      * @param threshold threshold of test value
      */
-    private void doubleSeriesMultiColors(List<Double> value, Double threshold) {
+    private void doubleSeriesMultiColors(double[] value, Double threshold) {
         XYChart.Series<Number, Number> series;
         ObservableList<XYChart.Data<Number, Number>> data = FXCollections.observableArrayList();
-        data.add(new XYChart.Data<>(this.position.getFirst(), value.getFirst()));
-        boolean status = value.getFirst() >= threshold;
-        String color = value.getFirst() >= threshold ? this.significantColor : this.negligibleColor;
+        data.add(new XYChart.Data<>(this.binPosition(this.firstBin), value[0]));
+        boolean status = value[0] >= threshold;
+        String color = value[0] >= threshold ? this.significantColor : this.negligibleColor;
 
         String fillStyle = "-fx-fill: TRANSPARENT;";
 
-        for (int i = 1; i < this.position.size(); i++) {
-            if ((status && value.get(i) < threshold) ||
-                    !status && value.get(i) >= threshold) {
-                double posThread = this.positionInterporation(this.position.get(i - 1), value.get(i - 1),
-                        this.position.get(i), value.get(i));
+        for (int i = 1; i < value.length; i++) {
+            if ((status && value[i] < threshold) ||
+                    !status && value[i] >= threshold) {
+                double posThread = this.positionInterporation(this.binPosition(this.firstBin + i - 1).doubleValue(),
+                        value[i - 1], this.binPosition(this.firstBin + i).doubleValue(), value[i]);
                 data.add(new XYChart.Data<>(posThread, threshold));
                 series = new XYChart.Series<>(data);
                 this.areaChartLower.getData().add(series);
@@ -343,8 +330,9 @@ public class DrawGraph {
                 fill.setStyle(fillStyle);
                 line.setStyle(lineStyle);
 
-                if (this.sequenceIndex.containsKey(i - 1)) {
-                    this.selectVectorRange(series, fill, i - 1);
+                int run = this.significantRun(this.firstBin + i - 1);
+                if (run >= 0) {
+                    this.selectVectorRange(series, fill, run);
                 }
 
                 data = FXCollections.observableArrayList();
@@ -352,10 +340,10 @@ public class DrawGraph {
                 color = status ? this.negligibleColor : this.significantColor;
                 status = !status;
             }
-            data.add(new XYChart.Data<>(this.position.get(i), value.get(i)));
+            data.add(new XYChart.Data<>(this.binPosition(this.firstBin + i), value[i]));
         }
 
-        int lastIdx = this.position.size() - 1;
+        int lastRun = this.significantRun(this.endBin - 1);
         series = new XYChart.Series<>(data);
         this.areaChartLower.getData().add(series);
 
@@ -366,8 +354,8 @@ public class DrawGraph {
         fill.setStyle(fillStyle);
         line.setStyle(lineStyle);
 
-        if (this.sequenceIndex.containsKey(lastIdx)) {
-            this.selectVectorRange(series, fill, lastIdx);
+        if (lastRun >= 0) {
+            this.selectVectorRange(series, fill, lastRun);
         }
     }
 
@@ -376,19 +364,19 @@ public class DrawGraph {
      *
      * @param series XYChart.Series
      * @param fill   Node
-     * @param index  vector position
+     * @param run    significant run
      */
-    private void selectVectorRange(XYChart.Series<Number, Number> series, Node fill, int index) {
-        int seqIndex = this.sequenceIndex.get(index);
-        String mer = this.sequenceList.get(seqIndex);
-        int startIndex = index + this.kmer - mer.length();
+    private void selectVectorRange(XYChart.Series<Number, Number> series, Node fill, int run) {
+        int startIndex = this.runs.getStart(run);
+        int bases = this.data.runEnd(this.runs, run) - startIndex;
+        int startPosition = this.data.position[startIndex];
         String areaStyle = String.format("-fx-stroke: %s;", this.significantColor);
 
         // handler for clicking on data point:
         series.getNode().setOnMouseClicked(t -> {
             if (t.getButton() == MouseButton.PRIMARY) {
                 fill.setStyle(areaStyle);
-                new AlignmentDialogueController(fill, startIndex + 1, startIndex + mer.length());
+                new AlignmentDialogueController(fill, startPosition, startPosition + bases - 1);
             }
         });
     }
@@ -397,12 +385,14 @@ public class DrawGraph {
      * Get the negative value of log.
      *
      * @param rawValue raw value
-     * @return negative value of log
+     * @param from     first index
+     * @param to       end index
+     * @return negative value of log from the first index
      */
-    private List<Double> minusLog10(List<Double> rawValue) {
-        List<Double> value = new ArrayList<>();
-        for (double raw : rawValue) {
-            value.add(-Math.log10(raw));
+    private static double[] minusLog10(double[] rawValue, int from, int to) {
+        double[] value = new double[to - from];
+        for (int i = from; i < to; i++) {
+            value[i - from] = -Math.log10(rawValue[i]);
         }
         return value;
     }
@@ -427,6 +417,7 @@ public class DrawGraph {
 
     /**
      * Adjust y-coordinate range.
+     * The maximum within the range of the x-axis is queried from the coverage pyramid, not from the points drawn.
      *
      * @param xyChart  LineChart or AreaChart
      * @param xAxisMin minimum value of x-coordinate
@@ -436,15 +427,33 @@ public class DrawGraph {
         NumberAxis yAxis = (NumberAxis) xyChart.getYAxis();
         double yAxisMax = 0.0;
 
-        for (XYChart.Series<Number, Number> series : xyChart.getData()) {
-            for (XYChart.Data<Number, Number> data : series.getData()) {
-                Number xValue = data.getXValue();
-                Number yValue = data.getYValue();
+        // Only positions within the range of the X axis are considered
+        int from = this.countPositions(Math.ceil(xAxisMin) - 1.0);
+        int to = this.countPositions(xAxisMax);
+        CoveragePyramid pyramid = this.data.pyramid;
+        if (xyChart == this.lineChartUpper) {
+            yAxisMax = pyramid.maxCount(from, to);
+        } else if (from < to) {
+            switch (this.selectedIndex) {
+                case 0:
+                    yAxisMax = -Math.log10(pyramid.minFdr(from, to));
+                    break;
+                case 1:
+                    yAxisMax = -Math.log10(pyramid.minBonferroni(from, to));
+                    break;
+                case 2:
+                    yAxisMax = -Math.log10(pyramid.minPvalue(from, to));
+                    break;
+                case 3:
+                    yAxisMax = pyramid.maxGvalue(from, to);
+                    break;
+                default:
+                    break;
+            }
 
-                // Only data points within the range of the X axis are considered
-                if (xValue.doubleValue() >= xAxisMin && xValue.doubleValue() <= xAxisMax) {
-                    if (yValue.doubleValue() > yAxisMax) yAxisMax = yValue.doubleValue();
-                }
+            // The threshold line runs from the first to the last position
+            if (from == 0 || to == this.data.size) {
+                yAxisMax = Math.max(yAxisMax, this.lowerThreshold);
             }
         }
 
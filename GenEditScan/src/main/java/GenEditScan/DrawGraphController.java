@@ -674,6 +674,45 @@ public class DrawGraphController extends ControllerBase implements Initializable
         }
     }
 
+    /**
+     * Save the significant regions (the runs at or above the threshold of the test value) to a BED file.
+     */
+    @FXML
+    private void saveRegionsAction() {
+        if (!CommonTools.checkInputText(this.statisticsFileID)) {
+            String errorMessage = "Statistics file was not specified.";
+            new ErrorDialogueController(errorMessage, "red", this.mainPaneID);
+            return;
+        }
+
+        GraphData data;
+        try {
+            data = GraphData.read(this.statisticsFileID.getText());
+        } catch (IOException e) {
+            data = null;
+        }
+        if (data == null) {
+            String errorMessage = "The format of statistics.txt file did not match.";
+            new ErrorDialogueController(errorMessage, "red", this.mainPaneID);
+            return;
+        }
+
+        File file = CommonTools.saveBedFile(this.mainPaneID);
+        if (file == null) {
+            return;
+        }
+
+        int metric = this.ylowerAxisTitleID.getSelectionModel().getSelectedIndex();
+        double tvalue = Double.parseDouble(this.thresholdValueID.getText());
+        try {
+            data.writeBed(file, data.significantRuns(Math.max(metric, 0), tvalue),
+                    super.userConfiguration.getVector_file());
+        } catch (IOException e) {
+            String errorMessage = "Could not create file (" + file.getPath() + ").";
+            new ErrorDialogueController(errorMessage, "red", this.mainPaneID);
+        }
+    }
+
     /**
      * Clear the graph drawing screen.
      */
@@ -0,0 +1,285 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import javafx.util.Pair;
+
+import java.util.*;
+
+/**
+ * Early stop class (interim G-tests of the k-mer match between rounds of reads).
+ * Each fastq file is read in rounds of EARLY_STOP reads (see FastqReader). At the end of a round the reader of
+ * each file hands its interim counts to this class and waits; when every file has arrived or reached its end,
+ * the G-test is run on the summed counts of each construct, and the positions within the FDR threshold are
+ * compared with those of the previous round. The reading stops when no more than EARLY_STOP_TOLERANCE positions
+ * have changed in STABLE_ROUNDS consecutive rounds. The reads consumed per file are kept in the options,
+ * so that the k-mer extension reads the same reads.
+ * All the files must be read at the same time, so the thread plan reads every job at once (see ThreadPlan).
+ *
+ * @author NARO
+ */
+public class EarlyStop {
+    //========================================================================//
+    // Local class
+    //========================================================================//
+    /**
+     * Execution options class
+     */
+    private final Options options;
+
+    /**
+     * Bitwise operation class
+     */
+    private final BitwiseOperation bitwiseOperation;
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * consecutive rounds within the tolerance before the stop
+     */
+    private static final int STABLE_ROUNDS = 2;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final List<StatisticsFile> statisticsFiles;
+    private final ScanCounters scanCounters;
+    private final int nMutant;
+    private final int[][] counts;           // latest counts of the k-mer index slots per file
+    private final long[] totals;            // latest windows per file
+    private final long[] reads;             // reads consumed per file
+    private final boolean[] arrived;        // waiting at the end of the current round
+    private final boolean[] finished;       // read to the end (or failed)
+    private int[][] plusSlots = null;       // slots of the plus mers per position of each construct (-1:not indexed)
+    private int[][] minusSlots = null;      // slots of the minus mers
+    private BitSet[] calls = null;          // significant positions of the last test per construct
+    private int rounds = 0;
+    private int stable = 0;
+    private boolean stopped = false;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Early stop class constructor.
+     *
+     * @param options          Execution options class
+     * @param bitwiseOperation Bitwise operation class
+     * @param statisticsFiles  statistics files of the vector constructs
+     * @param scanCounters     scan counters of the k-mer match
+     */
+    public EarlyStop(Options options, BitwiseOperation bitwiseOperation, List<StatisticsFile> statisticsFiles,
+                     ScanCounters scanCounters) {
+        this.options = options;
+        this.bitwiseOperation = bitwiseOperation;
+        this.statisticsFiles = statisticsFiles;
+        this.scanCounters = scanCounters;
+        this.nMutant = options.getMutant_files().size();
+        int files = options.number_of_samples();
+        this.counts = new int[files][];
+        this.totals = new long[files];
+        this.reads = new long[files];
+        this.arrived = new boolean[files];
+        this.finished = new boolean[files];
+    }
+
+    /**
+     * Hand the counts of a round over and wait for the other files.
+     *
+     * @param files  file indexes (the R1 and R2 files of a pair)
+     * @param counts counts of the k-mer index slots per file
+     * @param totals windows per file
+     * @param reads  reads consumed from each file
+     * @return true:read the next round, false:stop reading
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public synchronized boolean arrive(int[] files, int[][] counts, long[] totals, long reads)
+            throws InterruptedException {
+        this.update(files, counts, totals, reads);
+        for (int file : files) {
+            this.arrived[file] = true;
+        }
+        int round = this.rounds;
+        if (this.all_arrived()) {
+            this.end_round();
+        }
+        while (this.rounds == round) {
+            this.wait();
+        }
+        return !this.stopped;
+    }
+
+    /**
+     * Hand the final counts over at the end of the files (or after a failure).
+     *
+     * @param files  file indexes
+     * @param counts counts of the k-mer index slots per file (null:keep the counts of the last round)
+     * @param totals windows per file
+     * @param reads  reads consumed from each file
+     */
+    public synchronized void finish(int[] files, int[][] counts, long[] totals, long reads) {
+        if (counts != null) {
+            this.update(files, counts, totals, reads);
+        }
+        boolean waiting = false;
+        for (int file : files) {
+            this.finished[file] = true;
+            this.arrived[file] = false;
+        }
+        for (boolean arrived : this.arrived) {
+            waiting |= arrived;
+        }
+        if (waiting && this.all_arrived()) {
+            this.end_round();
+        }
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Keep the counts of the files.
+     *
+     * @param files  file indexes
+     * @param counts counts of the k-mer index slots per file
+     * @param totals windows per file
+     * @param reads  reads consumed from each file
+     */
+    private void update(int[] files, int[][] counts, long[] totals, long reads) {
+        for (int i = 0; i < files.length; i++) {
+            this.counts[files[i]] = counts[i];
+            this.totals[files[i]] = totals[i];
+            this.reads[files[i]] = reads;
+        }
+    }
+
+    /**
+     * Whether every file is waiting or finished.
+     *
+     * @return true:the round is complete
+     */
+    private boolean all_arrived() {
+        for (int i = 0; i < this.arrived.length; i++) {
+            if (!this.arrived[i] && !this.finished[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run the interim G-test, decide whether to stop, and release the waiting files.
+     */
+    private void end_round() {
+        this.rounds++;
+        KmerIndex kmerIndex = this.bitwiseOperation.getKmerIndex();
+        int[] mutantCounts = new int[kmerIndex.size()];
+        int[] wildTypeCounts = new int[kmerIndex.size()];
+        long mutantTotal = 0L;
+        long wildTypeTotal = 0L;
+        for (int i = 0; i < this.counts.length; i++) {
+            if (this.counts[i] == null) {
+                continue;
+            }
+            int[] sum = i < this.nMutant ? mutantCounts : wildTypeCounts;
+            for (int slot = 0; slot < sum.length; slot++) {
+                sum[slot] += this.counts[i][slot];
+            }
+            if (i < this.nMutant) {
+                mutantTotal += this.totals[i];
+            } else {
+                wildTypeTotal += this.totals[i];
+            }
+        }
+
+        // No test until both groups have windows
+        int called = 0;
+        int changed = -1;
+        if (mutantTotal > 0 && wildTypeTotal > 0) {
+            if (this.plusSlots == null) {
+                this.index_positions(kmerIndex);
+            }
+            BitSet[] current = new BitSet[this.statisticsFiles.size()];
+            changed = 0;
+            for (int c = 0; c < current.length; c++) {
+                Gtest gtest = new Gtest(this.options);
+                gtest.set_mer_total(mutantTotal, wildTypeTotal);
+                gtest.sequence_match(pos_freq(c, mutantCounts), pos_freq(c, wildTypeCounts));
+                current[c] = new BitSet();
+                for (Map.Entry<Integer, Double> entry : gtest.getFdr().entrySet()) {
+                    if (entry.getValue() <= this.options.getThreshold_fdr()) {
+                        current[c].set(entry.getKey());
+                    }
+                }
+                called += current[c].cardinality();
+                if (this.calls != null) {
+                    BitSet diff = (BitSet) current[c].clone();
+                    diff.xor(this.calls[c]);
+                    changed += diff.cardinality();
+                }
+            }
+            this.stable = this.calls != null && changed <= this.options.getEarlyStopTolerance() ? this.stable + 1 : 0;
+            this.calls = current;
+            this.stopped = this.stable >= STABLE_ROUNDS;
+        }
+
+        if (this.stopped) {
+            this.options.setReadLimits(this.reads.clone());
+            this.options.setRuntimeMessage("Early stop after round " + this.rounds + " ("
+                    + called + " significant positions).");
+        } else {
+            this.options.setRuntimeMessage("Early stop round " + this.rounds + ": " + called
+                    + " significant positions" + (changed >= 0 && this.rounds > 1 ? ", " + changed + " changed." : "."));
+        }
+        this.scanCounters.setEarlyStop(this.rounds, this.stopped, called);
+
+        Arrays.fill(this.arrived, false);
+        this.notifyAll();
+    }
+
+    /**
+     * Find the k-mer index slots of the plus and minus mers of each vector position.
+     *
+     * @param kmerIndex k-mer index
+     */
+    private void index_positions(KmerIndex kmerIndex) {
+        Map<String, Integer> slots = new HashMap<>();
+        for (int slot = 0; slot < kmerIndex.size(); slot++) {
+            slots.put(kmerIndex.getMer(slot), slot);
+        }
+        this.plusSlots = new int[this.statisticsFiles.size()][];
+        this.minusSlots = new int[this.statisticsFiles.size()][];
+        for (int c = 0; c < this.statisticsFiles.size(); c++) {
+            Map<Integer, Pair<String, String>> posPair = this.statisticsFiles.get(c).getVectorPosPair();
+            this.plusSlots[c] = new int[posPair.size()];
+            this.minusSlots[c] = new int[posPair.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Pair<String, String>> entry : posPair.entrySet()) {
+                this.plusSlots[c][i] = slots.getOrDefault(entry.getValue().getKey(), -1);
+                this.minusSlots[c][i++] = slots.getOrDefault(entry.getValue().getValue(), -1);
+            }
+        }
+    }
+
+    /**
+     * Position frequencies of a construct (the counts of the plus and minus mers, as in the statistics file).
+     *
+     * @param construct construct index
+     * @param counts    counts of the k-mer index slots
+     * @return frequency per position
+     */
+    private List<Integer> pos_freq(int construct, int[] counts) {
+        int[] plus = this.plusSlots[construct];
+        int[] minus = this.minusSlots[construct];
+        List<Integer> freq = new ArrayList<>(plus.length);
+        for (int i = 0; i < plus.length; i++) {
+            freq.add((plus[i] < 0 ? 0 : counts[plus[i]]) + (minus[i] < 0 ? 0 : counts[minus[i]]));
+        }
+        return freq;
+    }
+}
@@ -6,11 +6,9 @@ package GenEditScan;
 
 import javafx.util.Pair;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.util.List;
-import java.util.Map;
-import java.util.zip.GZIPInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 /**
  * Extension analysis of the fastq files class.
@@ -48,34 +46,101 @@ public class FastqExtension {
 
     /**
      * Read fastq files.
+     * The file is read by a reader thread and scanned by worker threads (see FastqReader).
+     * The flank pairs are kept per batch and added to the file's lists in the batch order,
+     * so the lists are in the same order as in a sequential scan.
+     * With the off-heap count tables (see OffHeapTable) each worker counts the distinct flank pairs outside the heap,
+     * and a pair is added to the list as many times as it was counted, at its first occurrence in the file.
+     * The lists then hold the same pairs in the same order of first occurrence, which is all that the outside file
+     * depends on.
      *
      * @param fastqFile     fastq file
      * @param merCounter    mer and its counts
      * @param merTotalCount total counts of mer per file
+     * @param scanCounters  windows skipped and bases trimmed per file
      * @param ifile         file index
      * @return true:read success, false:read failure
      */
     public boolean read_fastqFile(String fastqFile,
                                   List<Map<String, List<Pair<String, String>>>> merCounter,
-                                  long[] merTotalCount, int ifile) {
-        merTotalCount[ifile] = 0L;
+                                  long[] merTotalCount, ScanCounters scanCounters, int ifile) {
+        return this.read_fastqFile(fastqFile, null, merCounter, merTotalCount, scanCounters, ifile, -1);
+    }
+
+    /**
+     * Read the R1 and R2 fastq files of a pair together.
+     * The flank pairs of the mates are added to their own files, in the same order as if the files were read
+     * one by one, and the read pairs with a hit are counted to the R1 file.
+     * After an early stop of the k-mer match only the reads consumed by the match are read (see EarlyStop).
+     *
+     * @param fastqFile     fastq file (R1)
+     * @param mateFile      R2 file (null:single-end)
+     * @param merCounter    mer and its counts
+     * @param merTotalCount total counts of mer per file
+     * @param scanCounters  windows skipped and bases trimmed per file
+     * @param ifile         file index
+     * @param imate         file index of the R2 file
+     * @return true:read success, false:read failure
+     */
+    public boolean read_fastqFile(String fastqFile, String mateFile,
+                                  List<Map<String, List<Pair<String, String>>>> merCounter,
+                                  long[] merTotalCount, ScanCounters scanCounters, int ifile, int imate) {
+        int[] samples = mateFile == null ? new int[]{ifile} : new int[]{ifile, imate};
 
-        if (fastqFile.endsWith(".gz")) {
-            try (GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(fastqFile))) {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(gzip))) {
-                    return this.count_extension(fastqFile, br, merCounter, merTotalCount, ifile);
+        long tableBytes = this.options.offHeap_tableBytes();
+        List<List<OffHeapTable>> tables = new ArrayList<>();
+        for (int mate = 0; mate < samples.length; mate++) {
+            tables.add(new ArrayList<>());
+        }
+        List<List<ExtensionCounter>> counters;
+        FastqReader reader = new FastqReader(this.options, fastqFile, mateFile, false, "k-mer extension");
+        reader.setRounds(this.options.getReadLimit(ifile), null);
+        try {
+            counters = reader.read(mate -> {
+                OffHeapTable table = null;
+                if (tableBytes > 0) {
+                    table = new OffHeapTable(this.options.getBases_on_each_side(), tableBytes);
+                    tables.get(mate).add(table);
                 }
-            } catch (IOException e) {
+                return new ExtensionCounter(table);
+            }, this.options.scan_workers());
+            if (counters == null) {
                 return false;
             }
-        } else {
-            File file = new File(fastqFile);
-            try (BufferedReader br = Files.newBufferedReader(file.toPath())) {
-                return this.count_extension(fastqFile, br, merCounter, merTotalCount, ifile);
-            } catch (IOException e) {
-                return false;
+            for (int mate = 0; tableBytes > 0 && mate < samples.length; mate++) {
+                this.add_tables(tables.get(mate), merCounter.get(samples[mate]));
             }
+        } catch (IOException e) {
+            return false;
+        } catch (IllegalStateException e) {
+            this.options.setRuntimeMessage(e.getMessage());
+            return false;
+        } finally {
+            tables.forEach(list -> list.forEach(OffHeapTable::close));
         }
+
+        KmerIndex kmerIndex = this.bitwiseOperation.getKmerIndex();
+        for (int mate = 0; mate < samples.length; mate++) {
+            Map<String, List<Pair<String, String>>> counter = merCounter.get(samples[mate]);
+            TreeMap<Long, Map<Integer, List<Pair<String, String>>>> batches = new TreeMap<>();
+            long total = 0L;
+            long skipped = 0L;
+            for (ExtensionCounter extensionCounter : counters.get(mate)) {
+                batches.putAll(extensionCounter.batches);
+                total += extensionCounter.total;
+                skipped += extensionCounter.skipped;
+            }
+            merTotalCount[samples[mate]] = total;
+            scanCounters.set(samples[mate], skipped, reader, mate);
+            scanCounters.setReads(samples[mate], reader.getRecords());
+            for (Map<Integer, List<Pair<String, String>>> batch : batches.values()) {
+                for (Map.Entry<Integer, List<Pair<String, String>>> entry : batch.entrySet()) {
+                    counter.get(kmerIndex.getMer(entry.getKey())).addAll(entry.getValue());
+                }
+            }
+        }
+        scanCounters.setPairs(ifile, reader);
+        return true;
     }
 
     //========================================================================//
@@ -83,73 +148,158 @@ public class FastqExtension {
     //========================================================================//
 
     /**
-     * Count the number of mer extensions.
+     * Add the flank pairs of the off-heap tables to the file's lists.
      *
-     * @param fastqFile     fastq file
-     * @param br            BufferedReader of fasta file
-     * @param merCounter    mer and its counts
-     * @param merTotalCount total counts of mer per file
-     * @param ifile         file index
-     * @return true:process success, false:process failure
+     * @param tables  off-heap tables of the workers
+     * @param counter mer and its flank pairs
      */
-    private boolean count_extension(String fastqFile, BufferedReader br,
-                                    List<Map<String, List<Pair<String, String>>>> merCounter,
-                                    long[] merTotalCount, int ifile) {
-        final int kmer = this.options.getKmer();
-        final int nbase = this.options.getBases_on_each_side();
-        final int mask = this.options.getMax_chunk_array();
-        final int chunk_length = this.options.getChunk_length();
-        byte[] dna2bit = this.bitwiseOperation.getDna2bit();
-        byte[] chunk = this.bitwiseOperation.getChunk();
-        long readCounter = 0L;
-        String str;
-        String[] aLine = new String[4];
-        int nLine = 0;
-        fastqFile = new File(fastqFile).getName();
+    private void add_tables(List<OffHeapTable> tables, Map<String, List<Pair<String, String>>> counter) {
+        // slot and flank pair -> count, first occurrence
+        Map<Pair<Integer, Pair<String, String>>, long[]> pairs = new HashMap<>();
+        for (OffHeapTable table : tables) {
+            table.forEach((key, count, first, record) -> {
+                Pair<Integer, Pair<String, String>> pair = new Pair<>((int) (key >>> 32),
+                        new Pair<>(table.flank(record, false), table.flank(record, true)));
+                long[] value = pairs.computeIfAbsent(pair, p -> new long[]{0L, first});
+                value[0] += count;
+                value[1] = Math.min(value[1], first);
+            });
+        }
 
-        try {
-            while ((str = br.readLine()) != null) {
-                aLine[nLine++] = str;
-                if (nLine == 4) {
-                    nLine = 0;
-                    if (aLine[1].length() >= kmer + 2 * nbase) {
-                        if (Thread.currentThread().isInterrupted()) {   // for Stop process
-                            throw new RuntimeException();
-                        }
-
-                        if (++readCounter % 5000000L == 0L) {
-                            this.options.setRuntimeMessage(fastqFile + ": parsing "
-                                    + readCounter + " reads (k-mer extension).");
-                        }
-
-                        int dnabit = dna2bit[aLine[1].charAt(0)];
-                        for (int i = 1; i < chunk_length - 1; i++) {
-                            dnabit = (dnabit << 2) + dna2bit[aLine[1].charAt(i)];
-                        }
-
-                        for (int i = 0; i < nbase; i++) {
-                            dnabit = (dnabit << 2) + dna2bit[aLine[1].charAt(chunk_length - 1 + i)];
-                        }
-
-                        for (int i = nbase; i <= aLine[1].length() - kmer - nbase; i++) {
-                            dnabit = (dnabit << 2) + dna2bit[aLine[1].charAt(chunk_length - 1 + i)];
-                            dnabit = dnabit & mask;
-                            if (chunk[dnabit] == 1) {   // signed language only
-                                String mer = aLine[1].substring(i, i + kmer);
-                                if (merCounter.get(ifile).containsKey(mer)) {
-                                    String p5 = aLine[1].substring(i - nbase, i);
-                                    String p3 = aLine[1].substring(i + kmer, i + kmer + nbase);
-                                    merCounter.get(ifile).get(mer).add(new Pair<>(p5, p3));
-                                }
-                            }
-                            merTotalCount[ifile]++;
-                        }
+        List<Map.Entry<Pair<Integer, Pair<String, String>>, long[]>> entries = new ArrayList<>(pairs.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue()[1]));
+        KmerIndex kmerIndex = this.bitwiseOperation.getKmerIndex();
+        for (Map.Entry<Pair<Integer, Pair<String, String>>, long[]> entry : entries) {
+            counter.get(kmerIndex.getMer(entry.getKey().getKey()))
+                    .addAll(Collections.nCopies((int) entry.getValue()[0], entry.getKey().getValue()));
+        }
+    }
+
+    //========================================================================//
+    // Local class
+    //========================================================================//
+
+    /**
+     * Counter of the mer extensions (one per worker thread).
+     */
+    private class ExtensionCounter implements FastqReader.RecordHandler {
+        private final int kmer = FastqExtension.this.options.getKmer();
+        private final int nbase = FastqExtension.this.options.getBases_on_each_side();
+        private final int mask = FastqExtension.this.options.getMax_chunk_array();
+        private final int chunk_length = FastqExtension.this.options.getChunk_length();
+        private final byte[] chunk = FastqExtension.this.bitwiseOperation.getChunk();
+        private final KmerIndex kmerIndex = FastqExtension.this.bitwiseOperation.getKmerIndex();
+
+        /**
+         * off-heap count table of the flank pairs (null:flank pairs on the heap)
+         */
+        private final OffHeapTable table;
+
+        private long batch;
+        private long hits;
+
+        /**
+         * flank pairs of the k-mer index slots per batch
+         */
+        private final Map<Long, Map<Integer, List<Pair<String, String>>>> batches = new HashMap<>();
+        private Map<Integer, List<Pair<String, String>>> pairs;
+
+        /**
+         * number of windows scanned
+         */
+        private long total = 0L;
+
+        /**
+         * number of windows skipped for the bases other than A, C, G and T
+         */
+        private long skipped = 0L;
+
+        private ExtensionCounter(OffHeapTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public void begin(long batch) {
+            this.pairs = new HashMap<>();
+            this.batch = batch;
+            this.hits = 0L;
+        }
+
+        @Override
+        public int sequence(byte[] seq, int offset, int length) {
+            if (length < this.kmer + 2 * this.nbase) {
+                return 0;
+            }
+            // Packed bases before the first window, and the last base other than A, C, G and T
+            // (the windows up to it are skipped without probes)
+            int dnabit = 0;
+            int last = -1;
+            for (int j = 0; j < this.nbase + this.kmer - 1; j++) {
+                byte code = BaseEncoder.code(seq[offset + j]);
+                if (j < this.chunk_length - 1 + this.nbase) {
+                    dnabit = (dnabit << 2) + (code & 3);
+                }
+                if ((code & BaseEncoder.AMBIGUOUS) != 0) {
+                    last = j;
+                }
+            }
+
+            // Rolling key of the window (confirmed by the k-mer index)
+            int found = 0;
+            int first = offset + this.nbase;
+            long key = this.kmerIndex.key(seq, first);
+            for (int i = first; i <= offset + length - this.kmer - this.nbase; i++) {
+                if (i > first) {
+                    key = this.kmerIndex.roll(key, seq[i - 1], seq[i + this.kmer - 1]);
+                }
+                if ((BaseEncoder.code(seq[i + this.kmer - 1]) & BaseEncoder.AMBIGUOUS) != 0) {
+                    last = i - offset + this.kmer - 1;
+                }
+                dnabit = (dnabit << 2) + (BaseEncoder.code(seq[this.chunk_length - 1 + i]) & 3);
+                dnabit = dnabit & this.mask;
+                if (last >= i - offset) {
+                    this.skipped++;
+                } else if (this.chunk[dnabit] == 1) {   // signed language only
+                    int slot = this.kmerIndex.find(key, seq, i);
+                    if (slot >= 0) {
+                        found++;
+                    }
+                    if (slot >= 0 && this.table != null) {
+                        // key: slot and hash of the flanks, first occurrence: batch and hit in the batch
+                        this.table.add(((long) slot << 32) | (this.flank_hash(seq, i) & 0xffffffffL), seq,
+                                i - this.nbase, i + this.kmer, 1, (this.batch << 32) | this.hits++);
+                    } else if (slot >= 0) {
+                        String p5 = new String(seq, i - this.nbase, this.nbase, StandardCharsets.ISO_8859_1);
+                        String p3 = new String(seq, i + this.kmer, this.nbase, StandardCharsets.ISO_8859_1);
+                        this.pairs.computeIfAbsent(slot, k -> new ArrayList<>()).add(new Pair<>(p5, p3));
                     }
                 }
             }
-            return true;
-        } catch (IOException e) {
-            return false;
+            this.total += length - this.kmer - 2 * this.nbase + 1;
+            return found;
+        }
+
+        @Override
+        public void end(long batch) {
+            if (!this.pairs.isEmpty()) {
+                this.batches.put(batch, this.pairs);
+            }
+        }
+
+        /**
+         * Hash of the flanks of the window.
+         *
+         * @param seq   sequence
+         * @param first first base of the k-mer
+         * @return hash
+         */
+        private int flank_hash(byte[] seq, int first) {
+            int hash = 0;
+            for (int i = 0; i < this.nbase; i++) {
+                hash = 31 * hash + seq[first - this.nbase + i];
+                hash = 31 * hash + seq[first + this.kmer + i];
+            }
+            return hash;
         }
     }
 }
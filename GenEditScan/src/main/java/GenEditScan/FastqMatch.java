@@ -4,11 +4,11 @@
  */
 package GenEditScan;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.util.Map;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
+import java.util.Map;
 
 /**
  * Match analysis of the fastq files class.
@@ -29,6 +29,11 @@ public class FastqMatch {
      */
     private final BitwiseOperation bitwiseOperation;
 
+    /**
+     * Early stop class (null:read all the reads)
+     */
+    private EarlyStop earlyStop = null;
+
     //========================================================================//
     // Public function
     //========================================================================//
@@ -44,35 +49,126 @@ public class FastqMatch {
         this.bitwiseOperation = bitwiseOperation;
     }
 
+    /**
+     * Set the early stop of the k-mer match.
+     *
+     * @param earlyStop Early stop class (null:read all the reads)
+     */
+    public void setEarlyStop(EarlyStop earlyStop) {
+        this.earlyStop = earlyStop;
+    }
+
     /**
      * Read fastq files.
+     * The file is read by a reader thread and scanned by worker threads (see FastqReader),
+     * and the counts of the workers (see SlotCounts) are added to the file's counter at the end.
      *
      * @param fastqFile     fastq file
      * @param merCounter    mer and its counts
      * @param merTotalCount total counts of mer per file
+     * @param scanCounters  windows skipped and bases trimmed per file
      * @param ifile         file index
      * @return true:read success, false:read failure
      */
     public boolean read_fastqFile(String fastqFile, List<Map<String, Integer>> merCounter,
-                                  long[] merTotalCount, int ifile) {
-        merTotalCount[ifile] = 0L;
+                                  long[] merTotalCount, ScanCounters scanCounters, int ifile) {
+        return this.read_fastqFile(fastqFile, null, merCounter, merTotalCount, scanCounters, ifile, -1);
+    }
 
-        if (fastqFile.endsWith(".gz")) {
-            try (GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(fastqFile))) {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(gzip))) {
-                    return this.count_match(fastqFile, br, merCounter, merTotalCount, ifile);
-                }
-            } catch (IOException e) {
+    /**
+     * Read the R1 and R2 fastq files of a pair together.
+     * The mates are counted to their own files, as if the files were read one by one,
+     * and the pairs with a hit are counted to the R1 file.
+     * With the duplicate read cache (see ReadCache) each worker adds the slots of a repeated read from the cache,
+     * and the time saved is estimated from the scan time per window of the reads that were scanned.
+     * With the early stop the files are read in rounds, and the interim counts of each round are handed to
+     * the early stop (see EarlyStop), which decides whether to read the next round.
+     *
+     * @param fastqFile     fastq file (R1)
+     * @param mateFile      R2 file (null:single-end)
+     * @param merCounter    mer and its counts
+     * @param merTotalCount total counts of mer per file
+     * @param scanCounters  windows skipped and bases trimmed per file
+     * @param ifile         file index
+     * @param imate         file index of the R2 file
+     * @return true:read success, false:read failure
+     */
+    public boolean read_fastqFile(String fastqFile, String mateFile, List<Map<String, Integer>> merCounter,
+                                  long[] merTotalCount, ScanCounters scanCounters, int ifile, int imate) {
+        int[] samples = mateFile == null ? new int[]{ifile} : new int[]{ifile, imate};
+
+        KmerIndex kmerIndex = this.bitwiseOperation.getKmerIndex();
+        SlotCounts[] slotCounts = new SlotCounts[samples.length];
+        for (int mate = 0; mate < samples.length; mate++) {
+            slotCounts[mate] = new SlotCounts(kmerIndex.size(), this.options.getStripedCounts(),
+                    this.options.scan_workers());
+        }
+        long cacheBytes = this.options.duplicateCache_bytes() / samples.length;
+        List<List<MatchCounter>> counters;
+        List<List<MatchCounter>> created = new ArrayList<>();   // counters of the running workers per mate
+        for (int mate = 0; mate < samples.length; mate++) {
+            created.add(new ArrayList<>());
+        }
+        int[][] counts = null;
+        FastqReader reader = new FastqReader(this.options, fastqFile, mateFile, true, "k-mer match");
+        EarlyStop stop = this.earlyStop;
+        if (stop != null) {
+            reader.setRounds(this.options.getEarlyStop(), () -> stop.arrive(samples, reduce_counts(slotCounts),
+                    sum_windows(created), reader.getRecords()));
+        }
+        try {
+            counters = reader.read(mate -> {
+                MatchCounter counter = new MatchCounter(slotCounts[mate].counter(),
+                        cacheBytes > 0 ? new ReadCache(cacheBytes) : null);
+                created.get(mate).add(counter);
+                return counter;
+            }, this.options.scan_workers());
+            if (counters == null) {
                 return false;
             }
-        } else {
-            File file = new File(fastqFile);
-            try (BufferedReader br = Files.newBufferedReader(file.toPath())) {
-                return this.count_match(fastqFile, br, merCounter, merTotalCount, ifile);
-            } catch (IOException e) {
-                return false;
+            counts = reduce_counts(slotCounts);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (stop != null) {
+                stop.finish(samples, counts, sum_windows(created), reader.getRecords());
             }
         }
+
+        for (int mate = 0; mate < samples.length; mate++) {
+            Map<String, Integer> counter = merCounter.get(samples[mate]);
+            for (int slot = 0; slot < counts[mate].length; slot++) {
+                if (counts[mate][slot] > 0) {
+                    String mer = kmerIndex.getMer(slot);
+                    counter.put(mer, counter.get(mer) + counts[mate][slot]);
+                }
+            }
+            long total = 0L;
+            long skipped = 0L;
+            long lookups = 0L;
+            long hits = 0L;
+            long scanNanos = 0L;
+            long scannedWindows = 0L;
+            long cachedWindows = 0L;
+            for (MatchCounter matchCounter : counters.get(mate)) {
+                total += matchCounter.total;
+                skipped += matchCounter.skipped;
+                if (matchCounter.cache != null) {
+                    lookups += matchCounter.cache.getLookups();
+                    hits += matchCounter.cache.getHits();
+                }
+                scanNanos += matchCounter.scanNanos;
+                scannedWindows += matchCounter.scannedWindows;
+                cachedWindows += matchCounter.cachedWindows;
+            }
+            merTotalCount[samples[mate]] = total;
+            scanCounters.set(samples[mate], skipped, reader, mate);
+            scanCounters.setReads(samples[mate], reader.getRecords());
+            scanCounters.setCache(samples[mate], lookups, hits,
+                    scannedWindows > 0 ? (long) ((double) scanNanos / scannedWindows * cachedWindows) : 0L);
+        }
+        scanCounters.setPairs(ifile, reader);
+        return true;
     }
 
     //========================================================================//
@@ -80,69 +176,181 @@ public class FastqMatch {
     //========================================================================//
 
     /**
-     * Count the number of mer matches.
+     * Sum the counts of the workers of each file of the pair.
      *
-     * @param fastqFile     fastq file
-     * @param br            BufferedReader of the fasta file
-     * @param merCounter    mer and its counts
-     * @param merTotalCount total counts of mer per file
-     * @param ifile         file index
-     * @return true:process success, false:process failure
+     * @param slotCounts slot counts per file of the pair
+     * @return counts of the slots per file of the pair
      */
-    private boolean count_match(String fastqFile, BufferedReader br,
-                                List<Map<String, Integer>> merCounter,
-                                long[] merTotalCount, int ifile) {
-        final int kmer = this.options.getKmer();
-        final int mask = this.options.getMax_chunk_array();
-        final int chunk_length = this.options.getChunk_length();
-        byte[] dna2bit = this.bitwiseOperation.getDna2bit();
-        byte[] chunk = this.bitwiseOperation.getChunk();
-        long readCounter = 0L;
-        String str;
-        String[] aLine = new String[4];
-        int nLine = 0;
-        fastqFile = new File(fastqFile).getName();
+    private static int[][] reduce_counts(SlotCounts[] slotCounts) {
+        int[][] counts = new int[slotCounts.length][];
+        for (int mate = 0; mate < slotCounts.length; mate++) {
+            counts[mate] = slotCounts[mate].reduce();
+        }
+        return counts;
+    }
 
-        try {
-            while ((str = br.readLine()) != null) {
-                aLine[nLine++] = str;
-                if (nLine == 4) {
-                    nLine = 0;
-                    if (!aLine[0].startsWith("@") || !aLine[2].startsWith("+")) {
-                        return false;
-                    }
-                    if (aLine[1].length() >= kmer) {
-                        if (Thread.currentThread().isInterrupted()) {   // for Stop process
-                            throw new RuntimeException();
-                        }
+    /**
+     * Sum the windows scanned by the workers of each file of the pair.
+     *
+     * @param counters counters of the workers per file of the pair
+     * @return windows per file of the pair
+     */
+    private static long[] sum_windows(List<List<MatchCounter>> counters) {
+        long[] totals = new long[counters.size()];
+        for (int mate = 0; mate < counters.size(); mate++) {
+            for (MatchCounter counter : counters.get(mate)) {
+                totals[mate] += counter.total;
+            }
+        }
+        return totals;
+    }
 
-                        if (++readCounter % 5000000L == 0L) {
-                            this.options.setRuntimeMessage(fastqFile + ": parsing "
-                                    + readCounter + " reads (k-mer match).");
-                        }
+    //========================================================================//
+    // Local class
+    //========================================================================//
 
-                        int dnabit = dna2bit[aLine[1].charAt(0)];
-                        for (int i = 1; i < chunk_length - 1; i++) {
-                            dnabit = (dnabit << 2) + dna2bit[aLine[1].charAt(i)];
-                        }
+    /**
+     * Counter of the mer matches (one per worker thread).
+     */
+    private class MatchCounter implements FastqReader.RecordHandler {
+        private final int kmer = FastqMatch.this.options.getKmer();
+        private final int mask = FastqMatch.this.options.getMax_chunk_array();
+        private final int chunk_length = FastqMatch.this.options.getChunk_length();
+        private final byte[] chunk = FastqMatch.this.bitwiseOperation.getChunk();
+        private final KmerIndex kmerIndex = FastqMatch.this.bitwiseOperation.getKmerIndex();
+
+        /**
+         * counts of the k-mer index slots
+         */
+        private final SlotCounts.Counter counts;
+
+        /**
+         * number of windows scanned
+         */
+        private long total = 0L;
+
+        /**
+         * number of windows skipped for the bases other than A, C, G and T
+         */
+        private long skipped = 0L;
+
+        /**
+         * duplicate read cache (null:no cache)
+         */
+        private final ReadCache cache;
+
+        /**
+         * slots found in the read (for the cache)
+         */
+        private int[] found = new int[16];
+        private int nFound = 0;
+
+        /**
+         * scan time and windows of the reads scanned, and windows of the reads added from the cache
+         */
+        private long scanNanos = 0L;
+        private long scannedWindows = 0L;
+        private long cachedWindows = 0L;
+
+        private MatchCounter(SlotCounts.Counter counts, ReadCache cache) {
+            this.counts = counts;
+            this.cache = cache;
+        }
 
-                        for (int i = 0; i <= aLine[1].length() - kmer; i++) {
-                            dnabit = (dnabit << 2) + dna2bit[aLine[1].charAt(chunk_length - 1 + i)];
-                            dnabit = dnabit & mask;
-                            if (chunk[dnabit] == 1) {   // signed language only
-                                String mer = aLine[1].substring(i, i + kmer);
-                                if (merCounter.get(ifile).containsKey(mer)) {
-                                    merCounter.get(ifile).put(mer, merCounter.get(ifile).get(mer) + 1);
-                                }
+        @Override
+        public void begin(long batch) {
+        }
+
+        @Override
+        public int sequence(byte[] seq, int offset, int length) {
+            if (length < this.kmer) {
+                return 0;
+            }
+            if (this.cache == null) {
+                return this.scan(seq, offset, length);
+            }
+
+            int windows = length - this.kmer + 1;
+            long hash = ReadCache.hash(seq, offset, length);
+            int entry = this.cache.find(hash, seq, offset, length);
+            if (entry >= 0) {
+                int[] slots = this.cache.getSlots(entry);
+                for (int slot : slots) {
+                    this.counts.add(slot);
+                }
+                this.skipped += this.cache.getSkipped(entry);
+                this.total += windows;
+                this.cachedWindows += windows;
+                return slots.length;
+            }
+
+            long start = System.nanoTime();
+            long skippedBefore = this.skipped;
+            this.nFound = 0;
+            int hits = this.scan(seq, offset, length);
+            this.cache.add(hash, seq, offset, length, this.found, this.nFound, (int) (this.skipped - skippedBefore));
+            this.scanNanos += System.nanoTime() - start;
+            this.scannedWindows += windows;
+            return hits;
+        }
+
+        /**
+         * Scan the windows of a read.
+         *
+         * @param seq    buffer
+         * @param offset first base
+         * @param length number of bases (at least k)
+         * @return number of hits in the read
+         */
+        private int scan(byte[] seq, int offset, int length) {
+            // Packed bases before the first window, and the last base other than A, C, G and T
+            // (the windows up to it are skipped without probes)
+            int dnabit = 0;
+            int last = -1;
+            for (int j = 0; j < this.kmer - 1; j++) {
+                byte code = BaseEncoder.code(seq[offset + j]);
+                if (j < this.chunk_length - 1) {
+                    dnabit = (dnabit << 2) + (code & 3);
+                }
+                if ((code & BaseEncoder.AMBIGUOUS) != 0) {
+                    last = j;
+                }
+            }
+
+            // Rolling key of the window (confirmed by the k-mer index)
+            int hits = 0;
+            long key = this.kmerIndex.key(seq, offset);
+            for (int i = offset; i <= offset + length - this.kmer; i++) {
+                if (i > offset) {
+                    key = this.kmerIndex.roll(key, seq[i - 1], seq[i + this.kmer - 1]);
+                }
+                if ((BaseEncoder.code(seq[i + this.kmer - 1]) & BaseEncoder.AMBIGUOUS) != 0) {
+                    last = i - offset + this.kmer - 1;
+                }
+                dnabit = (dnabit << 2) + (BaseEncoder.code(seq[this.chunk_length - 1 + i]) & 3);
+                dnabit = dnabit & this.mask;
+                if (last >= i - offset) {
+                    this.skipped++;
+                } else if (this.chunk[dnabit] == 1) {   // signed language only
+                    int slot = this.kmerIndex.find(key, seq, i);
+                    if (slot >= 0) {
+                        this.counts.add(slot);
+                        hits++;
+                        if (this.cache != null) {
+                            if (this.nFound == this.found.length) {
+                                this.found = Arrays.copyOf(this.found, 2 * this.nFound);
                             }
-                            merTotalCount[ifile]++;
+                            this.found[this.nFound++] = slot;
                         }
                     }
                 }
             }
-            return true;
-        } catch (IOException e) {
-            return false;
+            this.total += length - this.kmer + 1;
+            return hits;
+        }
+
+        @Override
+        public void end(long batch) {
         }
     }
 }
@@ -0,0 +1,883 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Fastq reader class (pipeline of a reader and record workers).
+ * The calling thread reads (and inflates) the file into byte batches cut at record boundaries, and worker threads
+ * split the batches into records and pass the sequence lines to their record handlers. The batches are recycled
+ * through a bounded queue, so the reader waits when the workers fall behind (backpressure). Another worker is
+ * started, up to the maximum, whenever the queue of filled batches is full.
+ * The queues are ArrayBlockingQueue (lock based): a batch holds thousands of reads, so the hand-off cost is
+ * negligible compared with the k-mer scan.
+ * Lines are split in the same way as BufferedReader.readLine (LF, CR or CRLF).
+ * The records are trimmed and masked in the batch (see ReadTrimmer) before their sequence lines are passed on.
+ * Paired-end reads are read in lockstep: the R2 file is inflated by a prefetch thread while the reader inflates
+ * the R1 file, each R1 batch takes the same number of records from the R2 file, and the worker passes the two
+ * mates of each pair to the handlers of their own files. An interleaved file is cut into batches of whole pairs.
+ * The pairs with a hit in either mate and in both mates are counted.
+ * The file can be read in rounds of records: at the end of a round the reader waits until the workers have
+ * finished the batches of the round, and asks the round gate whether to go on (see EarlyStop).
+ * In the preview mode only the records whose seeded hash of the header line falls within the preview fraction
+ * are passed on (the R1 or first record decides for the pair), so the sample does not depend on the batches
+ * or the number of workers, and the same reads are sampled in every phase and run with the same seed.
+ *
+ * @author NARO
+ */
+public class FastqReader {
+    //========================================================================//
+    // Public class
+    //========================================================================//
+
+    /**
+     * Record handler (one instance per worker thread and file of the pair).
+     */
+    public interface RecordHandler {
+        /**
+         * Start a batch.
+         *
+         * @param batch batch number (in the file order)
+         */
+        void begin(long batch);
+
+        /**
+         * Process the sequence line of a record.
+         *
+         * @param buffer buffer
+         * @param offset first base
+         * @param length number of bases
+         * @return number of hits in the read
+         */
+        int sequence(byte[] buffer, int offset, int length);
+
+        /**
+         * End the batch.
+         *
+         * @param batch batch number
+         */
+        void end(long batch);
+    }
+
+    /**
+     * Round gate (called by the reader thread while the workers are idle).
+     */
+    public interface RoundGate {
+        /**
+         * End a round of records.
+         *
+         * @return true:read the next round, false:stop reading
+         * @throws InterruptedException if the thread is interrupted
+         */
+        boolean next_round() throws InterruptedException;
+    }
+
+    //========================================================================//
+    // Local class
+    //========================================================================//
+    /**
+     * Execution options class
+     */
+    private final Options options;
+
+    /**
+     * Batch of whole records.
+     */
+    private static final class Batch {
+        private byte[] data;
+        private int length = 0;
+        private long id = -1L;              // -1:end of the file
+        private Batch mate = null;          // same records of the R2 file
+
+        private Batch(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    /**
+     * Read position of the R2 file.
+     */
+    private static final class MateCursor {
+        private final InputStream in;
+        private byte[] carry = new byte[0]; // bytes after the records of the last batch
+        private int carryLength = 0;
+        private boolean eof = false;
+
+        private MateCursor(InputStream in) {
+            this.in = in;
+        }
+    }
+
+    /**
+     * Input stream inflated ahead by a thread.
+     */
+    private static final class PrefetchInputStream extends InputStream {
+        private static final byte[] END = new byte[0];
+        private final InputStream in;
+        private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(4);
+        private final Thread thread;
+        private volatile IOException failure = null;
+        private byte[] block = null;
+        private int position = 0;
+
+        private PrefetchInputStream(InputStream in, String name) {
+            this.in = in;
+            this.thread = new Thread(() -> {
+                try {
+                    int n;
+                    do {
+                        byte[] buffer = new byte[BATCH_SIZE];
+                        n = in.readNBytes(buffer, 0, buffer.length);
+                        if (n > 0) {
+                            this.blocks.put(n == buffer.length ? buffer : Arrays.copyOf(buffer, n));
+                        }
+                    } while (n == BATCH_SIZE);
+                } catch (IOException e) {
+                    this.failure = e;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    this.blocks.put(END);
+                } catch (InterruptedException ignored) {
+                }
+            }, name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (this.block == END) {
+                return -1;
+            }
+            if (this.block == null || this.position == this.block.length) {
+                try {
+                    this.block = this.blocks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                this.position = 0;
+                if (this.block == END) {
+                    if (this.failure != null) {
+                        throw this.failure;
+                    }
+                    return -1;
+                }
+            }
+            int n = Math.min(len, this.block.length - this.position);
+            System.arraycopy(this.block, this.position, b, off, n);
+            this.position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.thread.interrupt();
+            this.in.close();
+        }
+    }
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    private static final int BATCH_SIZE = 1 << 20;
+    private static final long MESSAGE_INTERVAL = 5000000L;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final String fastqFile;
+    private final String mateFile;          // R2 file (null:single-end or interleaved)
+    private final boolean interleaved;      // true:pairs of consecutive records
+    private final boolean checkRecords;
+    private final String stage;
+    private final ReadTrimmer[] trimmers;   // per file of the pair (null:no trimming)
+    private final long sampleLimit;         // records whose hash (53 bits) is below are sampled (-1:all records)
+    private final long sampleSeed;
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final AtomicBoolean malformed = new AtomicBoolean(false);
+    private volatile RuntimeException failure = null;
+    private final LongAdder pairs = new LongAdder();
+    private final LongAdder pairHits = new LongAdder();     // pairs with a hit in either mate
+    private final LongAdder pairBoth = new LongAdder();     // pairs with hits in both mates
+    private final LongAdder records = new LongAdder();      // records of the fastq file passed to the handlers
+    private long roundRecords = 0L;         // records per round (0:no rounds)
+    private RoundGate gate = null;          // null:stop after the first round
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Fastq reader class constructor.
+     *
+     * @param options      Execution options class
+     * @param fastqFile    fastq file (.gz allowed)
+     * @param mateFile     R2 file of the pair (null:single-end, or interleaved in the interleaved mode)
+     * @param checkRecords true:fail if a header line does not start with "@" or a separator line with "+"
+     * @param stage        process name for the progress message
+     */
+    public FastqReader(Options options, String fastqFile, String mateFile, boolean checkRecords, String stage) {
+        this.options = options;
+        this.fastqFile = fastqFile;
+        this.mateFile = mateFile;
+        this.interleaved = mateFile == null && options.pairedEnd_interleaved();
+        this.checkRecords = checkRecords;
+        this.stage = stage;
+        this.trimmers = new ReadTrimmer[mateFile == null ? 1 : 2];
+        for (int mate = 0; mate < this.trimmers.length; mate++) {
+            this.trimmers[mate] = ReadTrimmer.create(options);
+        }
+        this.sampleLimit = options.preview_limit();
+        this.sampleSeed = options.getPreviewSeed();
+    }
+
+    /**
+     * Read the file in rounds of records.
+     *
+     * @param roundRecords records per round (records of the fastq file, 0:no rounds)
+     * @param gate         round gate (null:read only the first round)
+     */
+    public void setRounds(long roundRecords, RoundGate gate) {
+        this.roundRecords = roundRecords;
+        this.gate = gate;
+    }
+
+    /**
+     * Read the file (and the R2 file).
+     *
+     * @param factory    record handler factory (0:fastq file, 1:R2 file)
+     * @param maxWorkers maximum number of worker threads
+     * @param <H>        record handler
+     * @return record handlers of the workers per file of the pair, null if a record is malformed
+     * @throws IOException if the file could not be read
+     */
+    public <H extends RecordHandler> List<List<H>> read(IntFunction<H> factory, int maxWorkers) throws IOException {
+        final int limit = Math.max(1, maxWorkers);
+        final int batches = 2 * limit + 1;
+        BlockingQueue<Batch> free = new ArrayBlockingQueue<>(batches);
+        BlockingQueue<Batch> full = new ArrayBlockingQueue<>(2 * limit);
+        for (int i = 0; i < batches; i++) {
+            Batch batch = new Batch(BATCH_SIZE);
+            if (this.mateFile != null) {
+                batch.mate = new Batch(BATCH_SIZE);
+            }
+            free.add(batch);
+        }
+        List<List<H>> handlers = new ArrayList<>();
+        for (int mate = 0; mate < this.trimmers.length; mate++) {
+            handlers.add(new ArrayList<>());
+        }
+        List<Thread> workers = new ArrayList<>();
+
+        try (InputStream in = open_stream(this.fastqFile);
+             InputStream mateIn = this.mateFile == null ? null
+                     : new PrefetchInputStream(open_stream(this.mateFile), "FastqReader-R2")) {
+            MateCursor cursor = mateIn == null ? null : new MateCursor(mateIn);
+            this.start_worker(factory, handlers, workers, free, full);
+            this.read_batches(in, cursor, free, full, batches, () -> {
+                if (workers.size() < limit) {
+                    this.start_worker(factory, handlers, workers, free, full);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.stop_workers(workers, full);
+        }
+
+        if (Thread.currentThread().isInterrupted()) {   // for Stop process
+            throw new RuntimeException();
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+        return this.malformed.get() ? null : handlers;
+    }
+
+    /**
+     * Get the bases trimmed by quality or adapter.
+     *
+     * @param mate 0:fastq file, 1:R2 file
+     * @return bases
+     */
+    public long getTrimmedBases(int mate) {
+        return this.trimmers[mate] == null ? 0L : this.trimmers[mate].getTrimmed();
+    }
+
+    /**
+     * Get the low quality bases masked to N.
+     *
+     * @param mate 0:fastq file, 1:R2 file
+     * @return bases
+     */
+    public long getMaskedBases(int mate) {
+        return this.trimmers[mate] == null ? 0L : this.trimmers[mate].getMasked();
+    }
+
+    // Getter
+
+    public long getPairs() {
+        return this.pairs.sum();
+    }
+
+    public long getPairHits() {
+        return this.pairHits.sum();
+    }
+
+    public long getPairBoth() {
+        return this.pairBoth.sum();
+    }
+
+    public long getRecords() {
+        return this.records.sum();
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Open the file.
+     *
+     * @param path fastq file
+     * @return input stream
+     * @throws IOException if the file could not be opened
+     */
+    private static InputStream open_stream(String path) throws IOException {
+        InputStream in = Files.newInputStream(new File(path).toPath());
+        return path.endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    /**
+     * Read the file into batches of whole records (whole pairs for an interleaved file).
+     *
+     * @param in     input stream
+     * @param cursor read position of the R2 file (null:no R2 file)
+     * @param free   empty batches
+     * @param full    filled batches
+     * @param batches number of batches
+     * @param grow    called when the filled batches are waiting for a worker
+     * @throws IOException          if the file could not be read
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void read_batches(InputStream in, MateCursor cursor, BlockingQueue<Batch> free, BlockingQueue<Batch> full,
+                              int batches, Runnable grow) throws IOException, InterruptedException {
+        String fileName = new File(this.fastqFile).getName();
+        int unit = this.interleaved ? 8 : 4;    // lines of a record (of a pair)
+        Batch batch = free.take();
+        long id = 0L;
+        long records = 0L;
+        int scanned = 0;        // bytes already split into lines
+        int lines = 0;          // lines in the batch
+        int recordEnd = 0;      // end of the last whole record
+        int recordLines = 0;    // lines before recordEnd
+        int lineEnd = 0;        // end of the last line separator
+        long quota = this.roundRecords > 0 ? this.roundRecords : Long.MAX_VALUE;
+        boolean roundEnd = false;
+        boolean eof = false;
+
+        while (true) {
+            if (this.stopped.get() || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            int n = in.read(batch.data, batch.length, batch.data.length - batch.length);
+            if (n < 0) {
+                eof = true;
+            } else {
+                batch.length += n;
+            }
+
+            // Find the line ends (a CR at the end waits for the next byte unless it is the end of the file)
+            int p = scanned;
+            while (p < batch.length) {
+                byte c = batch.data[p];
+                if (c == '\n') {
+                    p++;
+                } else if (c == '\r') {
+                    if (p + 1 < batch.length) {
+                        p += batch.data[p + 1] == '\n' ? 2 : 1;
+                    } else if (eof) {
+                        p++;
+                    } else {
+                        break;
+                    }
+                } else {
+                    p++;
+                    continue;
+                }
+                lineEnd = p;
+                if (++lines % unit == 0) {
+                    recordEnd = p;
+                    recordLines = lines;
+                    if (records + lines / 4 >= quota) {
+                        roundEnd = true;
+                        break;
+                    }
+                }
+            }
+            scanned = p;
+
+            if (eof && !roundEnd) {
+                if (cursor != null) {
+                    // The last record may end without a line separator
+                    long last = lines / 4 + (lines % 4 == 3 && lineEnd < batch.length ? 1 : 0);
+                    if (!fill_mate(cursor, batch.mate, last) || !mate_finished(cursor)) {
+                        this.malformed.set(true);
+                        this.stopped.set(true);
+                        return;
+                    }
+                }
+                batch.id = id;
+                full.put(batch);
+                return;
+            } else if (roundEnd || batch.length == batch.data.length) {
+                if (recordEnd == 0) {
+                    // A record longer than the batch
+                    batch.data = Arrays.copyOf(batch.data, batch.data.length * 2);
+                    continue;
+                }
+                if (cursor != null && !fill_mate(cursor, batch.mate, recordLines / 4)) {
+                    this.malformed.set(true);
+                    this.stopped.set(true);
+                    return;
+                }
+                Batch next = free.take();
+                int rest = batch.length - recordEnd;
+                if (next.data.length < rest) {
+                    next.data = new byte[batch.data.length];
+                }
+                System.arraycopy(batch.data, recordEnd, next.data, 0, rest);
+                next.length = rest;
+                batch.length = recordEnd;
+                batch.id = id++;
+
+                long before = records;
+                records += recordLines / 4;     // whole records before recordEnd
+                if (records / MESSAGE_INTERVAL != before / MESSAGE_INTERVAL) {
+                    this.options.setRuntimeMessage(fileName + ": parsing "
+                            + records / MESSAGE_INTERVAL * MESSAGE_INTERVAL + " reads (" + this.stage + ").");
+                }
+                if (!full.offer(batch)) {
+                    grow.run();
+                    full.put(batch);
+                }
+                batch = next;
+                lines = 0;
+                recordEnd = 0;
+                recordLines = 0;
+                lineEnd = 0;
+                scanned = 0;
+
+                if (roundEnd) {
+                    if (!this.end_round(free, batches)) {
+                        return;
+                    }
+                    roundEnd = false;
+                    quota += this.roundRecords;
+                }
+            }
+        }
+    }
+
+    /**
+     * End a round: wait until the workers have returned all the batches but the one of the reader, and ask the gate.
+     *
+     * @param free    empty batches
+     * @param batches number of batches
+     * @return true:read the next round, false:stop reading
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private boolean end_round(BlockingQueue<Batch> free, int batches) throws InterruptedException {
+        if (this.gate == null) {
+            return false;
+        }
+        List<Batch> idle = new ArrayList<>();
+        for (int i = 0; i < batches - 1; i++) {
+            idle.add(free.take());
+        }
+        free.addAll(idle);
+        return !this.stopped.get() && this.gate.next_round();
+    }
+
+    /**
+     * Fill the batch of the R2 file with the same number of records as the batch of the fastq file.
+     *
+     * @param cursor  read position of the R2 file
+     * @param batch   batch of the R2 file
+     * @param records number of records
+     * @return true:success, false:the R2 file has fewer records
+     * @throws IOException if the file could not be read
+     */
+    private static boolean fill_mate(MateCursor cursor, Batch batch, long records) throws IOException {
+        batch.length = 0;
+        if (records == 0) {
+            return true;
+        }
+        if (batch.data.length < cursor.carryLength) {
+            batch.data = new byte[Math.max(cursor.carryLength, 2 * batch.data.length)];
+        }
+        System.arraycopy(cursor.carry, 0, batch.data, 0, cursor.carryLength);
+        batch.length = cursor.carryLength;
+        cursor.carryLength = 0;
+
+        long need = 4 * records;
+        long lines = 0;
+        int lineEnd = 0;
+        int p = 0;
+        while (true) {
+            while (p < batch.length) {
+                byte c = batch.data[p];
+                if (c == '\n') {
+                    p++;
+                } else if (c == '\r') {
+                    if (p + 1 < batch.length) {
+                        p += batch.data[p + 1] == '\n' ? 2 : 1;
+                    } else if (cursor.eof) {
+                        p++;
+                    } else {
+                        break;
+                    }
+                } else {
+                    p++;
+                    continue;
+                }
+                lineEnd = p;
+                if (++lines == need) {
+                    // Keep the bytes of the next records
+                    int rest = batch.length - p;
+                    if (cursor.carry.length < rest) {
+                        cursor.carry = new byte[Math.max(rest, 2 * cursor.carry.length)];
+                    }
+                    System.arraycopy(batch.data, p, cursor.carry, 0, rest);
+                    cursor.carryLength = rest;
+                    batch.length = p;
+                    return true;
+                }
+            }
+            if (cursor.eof) {
+                // The last record may end without a line separator
+                return lines == need - 1 && lineEnd < batch.length;
+            }
+            if (batch.length == batch.data.length) {
+                batch.data = Arrays.copyOf(batch.data, batch.data.length * 2);
+            }
+            int n = cursor.in.read(batch.data, batch.length, batch.data.length - batch.length);
+            if (n < 0) {
+                cursor.eof = true;
+            } else {
+                batch.length += n;
+            }
+        }
+    }
+
+    /**
+     * Check that the R2 file has no more records.
+     *
+     * @param cursor read position of the R2 file
+     * @return true:no more records, false:the R2 file has more records
+     * @throws IOException if the file could not be read
+     */
+    private static boolean mate_finished(MateCursor cursor) throws IOException {
+        for (int i = 0; i < cursor.carryLength; i++) {
+            if (cursor.carry[i] != '\n' && cursor.carry[i] != '\r') {
+                return false;
+            }
+        }
+        byte[] buffer = new byte[1 << 12];
+        int n;
+        while ((n = cursor.in.read(buffer, 0, buffer.length)) >= 0) {
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] != '\n' && buffer[i] != '\r') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start a worker thread.
+     *
+     * @param factory  record handler factory
+     * @param handlers record handlers of the workers per file of the pair
+     * @param workers  worker threads
+     * @param free     empty batches
+     * @param full     filled batches
+     * @param <H>      record handler
+     */
+    private <H extends RecordHandler> void start_worker(IntFunction<H> factory, List<List<H>> handlers,
+                                                        List<Thread> workers,
+                                                        BlockingQueue<Batch> free, BlockingQueue<Batch> full) {
+        List<H> mates = new ArrayList<>();
+        for (int mate = 0; mate < handlers.size(); mate++) {
+            mates.add(factory.apply(mate));
+        }
+        Thread worker = new Thread(() -> {
+            try {
+                while (true) {
+                    Batch batch = full.take();
+                    if (batch.id < 0) {
+                        return;
+                    }
+                    // After a failure the batches are only recycled, so that the reader is never blocked.
+                    // An Error is kept as the failure too: the batch must go back whatever the handler throws.
+                    try {
+                        if (!this.stopped.get()) {
+                            for (H handler : mates) {
+                                handler.begin(batch.id);
+                            }
+                            if (!this.split_records(batch, mates)) {
+                                this.malformed.set(true);
+                                this.stopped.set(true);
+                            }
+                            for (H handler : mates) {
+                                handler.end(batch.id);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        if (this.failure == null) {
+                            this.failure = e instanceof RuntimeException re ? re : new RuntimeException(e);
+                        }
+                        this.stopped.set(true);
+                    } finally {
+                        batch.length = 0;
+                        free.put(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                this.stopped.set(true);
+            }
+        }, "FastqReader-" + workers.size());
+        worker.setDaemon(true);
+        for (int mate = 0; mate < handlers.size(); mate++) {
+            handlers.get(mate).add(mates.get(mate));
+        }
+        workers.add(worker);
+        worker.start();
+    }
+
+    /**
+     * Stop the worker threads after the remaining batches.
+     *
+     * @param workers worker threads
+     * @param full    filled batches
+     */
+    private void stop_workers(List<Thread> workers, BlockingQueue<Batch> full) {
+        boolean interrupted = Thread.interrupted();
+        if (interrupted) {
+            this.stopped.set(true);
+        }
+        for (Thread worker : workers) {
+            Batch end = new Batch(0);
+            while (true) {
+                try {
+                    full.put(end);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    this.stopped.set(true);
+                }
+            }
+        }
+        for (Thread worker : workers) {
+            while (true) {
+                try {
+                    worker.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    this.stopped.set(true);
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Split the batch (and the batch of the R2 file) into records.
+     *
+     * @param batch    batch
+     * @param handlers record handlers of the worker per file of the pair
+     * @return true:success, false:malformed record
+     */
+    private boolean split_records(Batch batch, List<? extends RecordHandler> handlers) {
+        int[] start = new int[4];
+        int[] end = new int[4];
+        int[] mateStart = new int[4];
+        int[] mateEnd = new int[4];
+        long[] counts = new long[3];    // pairs, pairs with a hit in either mate, pairs with hits in both mates
+        int pending = -1;               // hits of the first record of an interleaved pair
+        boolean second = false;         // second record of an interleaved pair
+        boolean sampled = true;
+        int p = 0;
+        int q = 0;
+        long n = 0L;
+        while ((p = next_record(batch, p, start, end)) >= 0) {
+            n++;
+            if (!second) {
+                sampled = this.sampled(batch.data, start[0], end[0]);
+            }
+            second = this.interleaved && !second;
+            int hits = sampled ? this.accept_record(batch.data, start, end, handlers.getFirst(), 0)
+                    : this.well_formed(batch.data, start, end) ? 0 : -1;
+            if (hits < 0) {
+                return false;
+            }
+            if (batch.mate != null) {
+                q = next_record(batch.mate, q, mateStart, mateEnd);
+                int mateHits = q < 0 ? -1 : sampled
+                        ? this.accept_record(batch.mate.data, mateStart, mateEnd, handlers.get(1), 1)
+                        : this.well_formed(batch.mate.data, mateStart, mateEnd) ? 0 : -1;
+                if (mateHits < 0) {
+                    return false;
+                }
+                if (sampled) {
+                    count_pair(counts, hits, mateHits);
+                }
+            } else if (this.interleaved && sampled) {
+                if (pending < 0) {
+                    pending = hits;
+                } else {
+                    count_pair(counts, pending, hits);
+                    pending = -1;
+                }
+            }
+        }
+        if (batch.mate != null && next_record(batch.mate, q, mateStart, mateEnd) >= 0) {
+            return false;
+        }
+        this.records.add(n);
+        this.pairs.add(counts[0]);
+        this.pairHits.add(counts[1]);
+        this.pairBoth.add(counts[2]);
+        return true;
+    }
+
+    /**
+     * Find the next record in the batch.
+     *
+     * @param batch batch
+     * @param p     first byte
+     * @param start first byte of the lines
+     * @param end   end of the lines
+     * @return first byte after the record, -1 if there is no more whole record
+     */
+    private static int next_record(Batch batch, int p, int[] start, int[] end) {
+        byte[] data = batch.data;
+        int nLine = 0;
+        int lineStart = p;
+        while (p < batch.length) {
+            byte c = data[p];
+            if (c != '\n' && c != '\r') {
+                p++;
+                continue;
+            }
+            start[nLine] = lineStart;
+            end[nLine++] = p;
+            p += c == '\r' && p + 1 < batch.length && data[p + 1] == '\n' ? 2 : 1;
+            lineStart = p;
+            if (nLine == 4) {
+                return p;
+            }
+        }
+        if (lineStart < batch.length && nLine == 3) {
+            // Last line without a line separator
+            start[3] = lineStart;
+            end[3] = batch.length;
+            return batch.length;
+        }
+        return -1;
+    }
+
+    /**
+     * Count a read pair.
+     *
+     * @param counts   pairs, pairs with a hit in either mate, pairs with hits in both mates
+     * @param hits     hits of the first mate
+     * @param mateHits hits of the second mate
+     */
+    private static void count_pair(long[] counts, int hits, int mateHits) {
+        counts[0]++;
+        if (hits > 0 || mateHits > 0) {
+            counts[1]++;
+        }
+        if (hits > 0 && mateHits > 0) {
+            counts[2]++;
+        }
+    }
+
+    /**
+     * Check and trim the record, and pass its sequence line to the handler.
+     *
+     * @param data    buffer
+     * @param start   first byte of the lines
+     * @param end     end of the lines
+     * @param handler record handler
+     * @param mate    0:fastq file, 1:R2 file
+     * @return hits in the read, -1 if the record is malformed
+     */
+    private int accept_record(byte[] data, int[] start, int[] end, RecordHandler handler, int mate) {
+        if (!this.well_formed(data, start, end)) {
+            return -1;
+        }
+        int length = end[1] - start[1];
+        if (this.trimmers[mate] != null) {
+            length = this.trimmers[mate].trim(data, start[1], length, start[3], end[3] - start[3]);
+        }
+        return handler.sequence(data, start[1], length);
+    }
+
+    /**
+     * Check the header and separator lines of the record (if the records are checked).
+     *
+     * @param data  buffer
+     * @param start first byte of the lines
+     * @param end   end of the lines
+     * @return true:well formed, false:malformed
+     */
+    private boolean well_formed(byte[] data, int[] start, int[] end) {
+        return !this.checkRecords || end[0] > start[0] && data[start[0]] == '@'
+                && end[2] > start[2] && data[start[2]] == '+';
+    }
+
+    /**
+     * Whether the record (or the pair) is in the preview sample.
+     *
+     * @param data buffer
+     * @param from first byte of the header line
+     * @param to   end of the header line
+     * @return true:sampled
+     */
+    private boolean sampled(byte[] data, int from, int to) {
+        return this.sampleLimit < 0 || ReadCache.hash(data, from, to - from, this.sampleSeed) >>> 11 < this.sampleLimit;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Graph data class (the statistics.txt file read for the graph view).
+ * The graph is redrawn at every change of the axes, so the last file read is kept with its coverage pyramid
+ * (see CoveragePyramid), and read again only when the file has been changed. The significant runs of each test
+ * value (see SignificantRuns) are kept with the file for the last threshold.
+ *
+ * @author NARO
+ */
+public class GraphData {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    private static final float FLOAT_LIMIT = 1.0E-38F;
+
+    /**
+     * last file read
+     */
+    private static GraphData last = null;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final String path;
+    private final long modified;
+    private final long length;
+    String[] header;                        // #K-mer line
+    int kmer = 0;
+    String vectorName = null;               // name of the vector record (null:not on the header line)
+    int size = 0;                           // number of positions
+    int[] position = new int[1024];
+    String vectorArray;                     // sequence followed by its first (k-mer - 1) bases
+    int[] mutantCount = new int[1024];
+    int[] wildTypeCount = new int[1024];
+    double[] gvalue = new double[1024];
+    double[] pvalue = new double[1024];
+    double[] fdr = new double[1024];
+    double[] bonferroni = new double[1024];
+    int[] blockEnd;                         // end of the bases following each position without a gap
+    CoveragePyramid pyramid;
+    private final SignificantRuns[] runs = new SignificantRuns[4];
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Read a statistics.txt file (the last file is reused unless it has been changed).
+     *
+     * @param statisticsFile statistics.txt file
+     * @return graph data, null if the file is not a statistics.txt file
+     * @throws IOException if the file cannot be read
+     */
+    public static GraphData read(String statisticsFile) throws IOException {
+        File file = new File(statisticsFile);
+        GraphData data = last;
+        if (data != null && data.path.equals(file.getAbsolutePath()) && data.modified == file.lastModified()
+                && data.length == file.length()) {
+            return data;
+        }
+        data = new GraphData(file);
+        if (!data.parse(file)) {
+            return null;
+        }
+        last = data;
+        return data;
+    }
+
+    /**
+     * Get the significant runs of a test value.
+     *
+     * @param metric         test value (see SignificantRuns)
+     * @param thresholdValue threshold of the test value as entered (the -log10 is taken but for the G statistic)
+     * @return significant runs
+     */
+    public SignificantRuns significantRuns(int metric, double thresholdValue) {
+        double threshold = metric == SignificantRuns.GVALUE ? thresholdValue : -Math.log10(thresholdValue);
+        SignificantRuns found = this.runs[metric];
+        if (found == null || !found.matches(metric, threshold)) {
+            found = new SignificantRuns(this.pyramid, this.position, metric, threshold);
+            this.runs[metric] = found;
+        }
+        return found;
+    }
+
+    /**
+     * End of the bases of a run (its last k-mer, cut at a gap).
+     *
+     * @param runs significant runs
+     * @param run  run index
+     * @return end index of the vector array
+     */
+    public int runEnd(SignificantRuns runs, int run) {
+        int start = runs.getStart(run);
+        return Math.min(runs.getEnd(run) + this.kmer - 1, this.blockEnd[start]);
+    }
+
+    /**
+     * Create a BED file of the significant runs.
+     * The chromosome of the records is the name of the vector record (the first word of its fasta header, as in
+     * the region file): the name on the header line of a multi-construct or region run, otherwise the name in
+     * the vector fasta file, or the name of the statistics.txt file if neither is known. The bases are cut at
+     * the end of the vector.
+     *
+     * @param bedFile    BED file
+     * @param runs       significant runs
+     * @param vectorFile vector fasta file of the run (null:unknown)
+     * @throws IOException if the file cannot be written
+     */
+    public void writeBed(File bedFile, SignificantRuns runs, String vectorFile) throws IOException {
+        String name = this.vectorName;
+        if (name == null && vectorFile != null && !vectorFile.isEmpty()) {
+            name = VectorSequence.vector_name(new File(vectorFile));
+        }
+        if (name == null) {
+            name = new File(this.path).getName().replaceFirst("\\.statistics\\.txt$", "");
+        }
+        int last = this.position[this.size - 1];
+        try (TextFileWriter tw = new TextFileWriter(Files.newOutputStream(Paths.get(bedFile.getPath())))) {
+            for (int run = 0; run < runs.size(); run++) {
+                int start = this.position[runs.getStart(run)];
+                int end = Math.min(start + this.runEnd(runs, run) - runs.getStart(run) - 1, last);
+                tw.print(name).tab().print(start - 1).tab().print(end).println();
+            }
+        }
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Graph data class constructor.
+     *
+     * @param file statistics.txt file
+     */
+    private GraphData(File file) {
+        this.path = file.getAbsolutePath();
+        this.modified = file.lastModified();
+        this.length = file.length();
+    }
+
+    /**
+     * Read the positions of the file and build the coverage pyramid.
+     *
+     * @param file statistics.txt file
+     * @return true:normal, false:abnormal
+     * @throws IOException if the file cannot be read
+     */
+    private boolean parse(File file) throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(file.toPath())) {
+            int iPos = 0;
+            int iSeq = 1;
+            int iMutant = 2;
+            int iWildType = 3;
+            int iGval = 4;
+            int iPval = 5;
+            int iFDR = 6;
+            int iBonferroni = 7;
+
+            StringBuilder sequence = new StringBuilder();
+            String str = br.readLine();
+            if (str.startsWith("#K-mer")) {
+                this.header = str.split("\t");
+                this.kmer = Integer.parseInt(this.header[1]);
+                for (int i = 2; i + 1 < this.header.length; i += 2) {
+                    if (this.header[i].equals("Vector")) {
+                        this.vectorName = this.header[i + 1];
+                    }
+                }
+                str = br.readLine();
+            } else {
+                return false;
+            }
+
+            if (str.startsWith("#Pos")) {
+                List<String> headers = new ArrayList<>(Arrays.asList(str.split("\t")));
+                if (headers.contains("#Pos")) {
+                    iPos = headers.indexOf("#Pos");
+                }
+                if (headers.contains("Seq")) {
+                    iSeq = headers.indexOf("Seq");
+                }
+                if (headers.contains("Mutant")) {
+                    iMutant = headers.indexOf("Mutant");
+                }
+                if (headers.contains("WildType")) {
+                    iWildType = headers.indexOf("WildType");
+                }
+                if (headers.contains("Gval")) {
+                    iGval = headers.indexOf("Gval");
+                }
+                if (headers.contains("Pval")) {
+                    iPval = headers.indexOf("Pval");
+                }
+                if (headers.contains("FDR")) {
+                    iFDR = headers.indexOf("FDR");
+                }
+                if (headers.contains("Bonferroni")) {
+                    iBonferroni = headers.indexOf("Bonferroni");
+                }
+            }
+
+            while ((str = br.readLine()) != null) {
+                String[] posLine = str.split("\t");
+                if (this.size == this.position.length) {
+                    this.grow();
+                }
+                int i = this.size++;
+                this.position[i] = Integer.parseInt(posLine[iPos]);
+                sequence.append(posLine[iSeq]);
+                this.mutantCount[i] = Integer.parseInt(posLine[iMutant]);
+                this.wildTypeCount[i] = Integer.parseInt(posLine[iWildType]);
+                this.gvalue[i] = Math.max(Double.parseDouble(posLine[iGval]), 0.0);
+                this.pvalue[i] = Math.max(Double.parseDouble(posLine[iPval]), FLOAT_LIMIT);
+                this.fdr[i] = Math.max(Double.parseDouble(posLine[iFDR]), FLOAT_LIMIT);
+                this.bonferroni[i] = Math.max(Double.parseDouble(posLine[iBonferroni]), FLOAT_LIMIT);
+            }
+            if (this.size == 0) {
+                return false;
+            }
+            this.vectorArray = sequence.append(sequence, 0, this.kmer - 1).toString();
+        }
+
+        this.position = Arrays.copyOf(this.position, this.size);
+        this.mutantCount = Arrays.copyOf(this.mutantCount, this.size);
+        this.wildTypeCount = Arrays.copyOf(this.wildTypeCount, this.size);
+        this.gvalue = Arrays.copyOf(this.gvalue, this.size);
+        this.pvalue = Arrays.copyOf(this.pvalue, this.size);
+        this.fdr = Arrays.copyOf(this.fdr, this.size);
+        this.bonferroni = Arrays.copyOf(this.bonferroni, this.size);
+        this.set_blockEnd();
+        this.pyramid = new CoveragePyramid(this.mutantCount, this.wildTypeCount, this.gvalue, this.pvalue, this.fdr,
+                this.bonferroni);
+        return true;
+    }
+
+    /**
+     * Set the end of the bases following each position without a gap.
+     * Without gaps the bases run on to the first (k-mer - 1) bases appended to the vector array.
+     */
+    private void set_blockEnd() {
+        this.blockEnd = new int[this.size];
+        int end = this.vectorArray.length();
+        for (int i = 1; i < this.size; i++) {
+            if (this.gap(i)) {
+                end = this.size;
+                break;
+            }
+        }
+        for (int i = this.size - 1; i >= 0; i--) {
+            if (i < this.size - 1 && this.gap(i + 1)) {
+                end = i + 1;
+            }
+            this.blockEnd[i] = end;
+        }
+    }
+
+    /**
+     * Whether a position does not follow the previous one.
+     *
+     * @param index position index (at least 1)
+     * @return true:gap before the position
+     */
+    private boolean gap(int index) {
+        return this.position[index] != this.position[index - 1] + 1;
+    }
+
+    /**
+     * Double the capacity of the arrays.
+     */
+    private void grow() {
+        int capacity = this.position.length * 2;
+        this.position = Arrays.copyOf(this.position, capacity);
+        this.mutantCount = Arrays.copyOf(this.mutantCount, capacity);
+        this.wildTypeCount = Arrays.copyOf(this.wildTypeCount, capacity);
+        this.gvalue = Arrays.copyOf(this.gvalue, capacity);
+        this.pvalue = Arrays.copyOf(this.pvalue, capacity);
+        this.fdr = Arrays.copyOf(this.fdr, capacity);
+        this.bonferroni = Arrays.copyOf(this.bonferroni, capacity);
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Host genome k-mer index class.
+ * The canonical k-mers (the smaller of the k-mer and its complementary sequence) of the host genome are kept
+ * as a sorted set of 64-bit keys in a cache file next to the host fasta file, which is memory-mapped and
+ * searched by binary search. The key is the 2-bit code for k &lt;= 31, or a 64-bit hash for larger k.
+ * The cache file is built with bounded memory: the keys are sorted in runs (Arrays.parallelSort uses all cores),
+ * written to temporary files, and merged. K-mers containing bases other than A, C, G and T are not indexed.
+ *
+ * @author NARO
+ */
+public class HostKmerIndex implements AutoCloseable {
+    //========================================================================//
+    // Public data
+    //========================================================================//
+    /**
+     * Extension of the cache file.
+     */
+    public static final String EXTENSION = ".hostidx";
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    private static final long MAGIC = 0x47455348_4f535431L;    // "GESHOST1"
+    private static final int HEADER_SIZE = 40;                  // magic, k-mer, length, last modified, count
+    private static final int MAX_2BIT_KMER = 31;
+    private static final long BASE = 0x100000001b3L;
+    private static final int SEGMENT_SHIFT = 27;                // 2^27 keys (1 GB) per mapping
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * A:0, C:1, G:2, T:3, others:-1 (complement is 3 - code)
+     */
+    private static final byte[] CODE = new byte[256];
+
+    static {
+        Arrays.fill(CODE, (byte) -1);
+        CODE['A'] = CODE['a'] = 0;
+        CODE['C'] = CODE['c'] = 1;
+        CODE['G'] = CODE['g'] = 2;
+        CODE['T'] = CODE['t'] = 3;
+    }
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final int kmer;
+    private final long count;
+    private final LongBuffer[] segments;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Open the host genome k-mer index, building the cache file if it does not exist or is out of date.
+     *
+     * @param hostFile host genome fasta file (.gz allowed)
+     * @param kmer     k-mer
+     * @param options  Execution options class (for messages)
+     * @return host genome k-mer index
+     * @throws IOException if the host genome could not be read or the cache file could not be created
+     */
+    public static HostKmerIndex open(File hostFile, int kmer, Options options) throws IOException {
+        File cacheFile = cache_file(hostFile, kmer);
+        if (!is_valid(cacheFile, hostFile, kmer)) {
+            options.setRuntimeMessage("Now building the host k-mer index (" + hostFile.getName() + ").");
+            build(hostFile, kmer, cacheFile);
+        }
+        return new HostKmerIndex(cacheFile, kmer);
+    }
+
+    /**
+     * Whether the k-mer (or its complementary sequence) occurs in the host genome.
+     *
+     * @param mer k-mer
+     * @return true:occurs, false:does not occur or contains bases other than A, C, G and T
+     */
+    public boolean contains(String mer) {
+        byte[] seq = new byte[mer.length()];
+        for (int i = 0; i < seq.length; i++) {
+            seq[i] = CODE[mer.charAt(i) & 0xff];
+            if (seq[i] < 0) {
+                return false;
+            }
+        }
+        KeyGenerator generator = new KeyGenerator(this.kmer);
+        long key = 0L;
+        for (byte code : seq) {
+            key = generator.next(code);
+        }
+        return this.search(key);
+    }
+
+    /**
+     * Number of k-mers in the index.
+     *
+     * @return number of canonical k-mers
+     */
+    public long size() {
+        return this.count;
+    }
+
+    @Override
+    public void close() {
+        Arrays.fill(this.segments, null);   // mappings are released by the garbage collector
+    }
+
+    //========================================================================//
+    // Local class
+    //========================================================================//
+
+    /**
+     * Canonical key generator of the k-mers in a sequence.
+     */
+    private static final class KeyGenerator {
+        private final int kmer;
+        private final boolean twoBit;
+        private final long mask;
+        private final long[] basePow;       // BASE^i (i < k)
+        private final long baseInverse;     // BASE^-1 (mod 2^64)
+        private final byte[] window;        // codes of the current window (ring buffer)
+        private int head = 0;               // first base of the window in the ring buffer
+        private long forward;
+        private long reverse;
+        private int length = 0;             // number of valid bases in the window
+
+        private KeyGenerator(int kmer) {
+            this.kmer = kmer;
+            this.twoBit = kmer <= MAX_2BIT_KMER;
+            this.mask = this.twoBit ? (1L << (2 * kmer)) - 1 : -1L;
+            this.basePow = new long[kmer];
+            this.basePow[0] = 1L;
+            for (int i = 1; i < kmer; i++) {
+                this.basePow[i] = this.basePow[i - 1] * BASE;
+            }
+            long inverse = BASE;    // Newton's method: x = x * (2 - BASE * x)
+            for (int i = 0; i < 6; i++) {
+                inverse *= 2 - BASE * inverse;
+            }
+            this.baseInverse = inverse;
+            this.window = new byte[kmer];
+        }
+
+        /**
+         * Forget the window (after a base other than A, C, G and T, or a new record).
+         */
+        private void reset() {
+            this.length = 0;
+            this.head = 0;
+            this.forward = 0L;
+            this.reverse = 0L;
+        }
+
+        /**
+         * Add a base.
+         * The forward key is sum(c[i] * BASE^(k-1-i)) and the reverse key is sum((3 - c[i]) * BASE^i),
+         * which is the forward key of the complementary sequence.
+         *
+         * @param code base code (0-3)
+         * @return canonical key of the window ending at the base (valid when isFull())
+         */
+        private long next(byte code) {
+            int complement = 3 - code;
+            if (this.twoBit) {
+                this.forward = ((this.forward << 2) | code) & this.mask;
+                this.reverse = (this.reverse >>> 2) | ((long) complement << (2 * (this.kmer - 1)));
+                this.length = Math.min(this.length + 1, this.kmer);
+                return Math.min(this.forward, this.reverse);
+            }
+
+            if (this.length == this.kmer) {
+                // Remove the first base of the window
+                int out = this.window[this.head];
+                this.head = (this.head + 1) % this.kmer;
+                this.length--;
+                this.forward -= out * this.basePow[this.kmer - 1];
+                this.reverse = (this.reverse - (3 - out)) * this.baseInverse;
+            }
+            this.window[(this.head + this.length) % this.kmer] = code;
+            this.forward = this.forward * BASE + code;
+            this.reverse += complement * this.basePow[this.length];
+            this.length++;
+            return Math.min(mix(this.forward), mix(this.reverse));
+        }
+
+        private boolean isFull() {
+            return this.length == this.kmer;
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            return h ^ (h >>> 33);
+        }
+    }
+
+    /**
+     * Reader of a sorted run file.
+     */
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        private long remaining;
+        private long value;
+
+        private RunReader(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            this.remaining = file.length() / Long.BYTES;
+        }
+
+        private boolean advance() throws IOException {
+            if (this.remaining == 0) {
+                return false;
+            }
+            this.value = this.in.readLong();
+            this.remaining--;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Host genome k-mer index class constructor (maps the cache file).
+     *
+     * @param cacheFile cache file
+     * @param kmer      k-mer
+     * @throws IOException if the cache file could not be mapped
+     */
+    private HostKmerIndex(File cacheFile, int kmer) throws IOException {
+        this.kmer = kmer;
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            this.count = (channel.size() - HEADER_SIZE) / Long.BYTES;
+            int nSegments = (int) ((this.count + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT);
+            this.segments = new LongBuffer[nSegments];
+            for (int i = 0; i < nSegments; i++) {
+                long first = (long) i << SEGMENT_SHIFT;
+                long length = Math.min(this.count - first, 1L << SEGMENT_SHIFT);
+                this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * Long.BYTES, length * Long.BYTES).asLongBuffer();
+            }
+        }
+    }
+
+    /**
+     * Binary search of the key.
+     *
+     * @param key canonical key
+     * @return true:found, false:not found
+     */
+    private boolean search(long key) {
+        long low = 0L;
+        long high = this.count - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long value = this.segments[(int) (mid >>> SEGMENT_SHIFT)].get((int) (mid & ((1L << SEGMENT_SHIFT) - 1)));
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cache file of the host genome (next to the fasta file, or in the temporary directory if not writable).
+     *
+     * @param hostFile host genome fasta file
+     * @param kmer     k-mer
+     * @return cache file
+     */
+    private static File cache_file(File hostFile, int kmer) {
+        File cacheFile = new File(hostFile.getPath() + ".k" + kmer + EXTENSION);
+        File directory = hostFile.getAbsoluteFile().getParentFile();
+        if (cacheFile.exists() || (directory != null && directory.canWrite())) {
+            return cacheFile;
+        }
+        String name = hostFile.getName() + "." + Integer.toHexString(hostFile.getAbsolutePath().hashCode())
+                + ".k" + kmer + EXTENSION;
+        return new File(System.getProperty("java.io.tmpdir"), name);
+    }
+
+    /**
+     * Check the header of the cache file.
+     *
+     * @param cacheFile cache file
+     * @param hostFile  host genome fasta file
+     * @param kmer      k-mer
+     * @return true:up to date, false:missing or out of date
+     */
+    private static boolean is_valid(File cacheFile, File hostFile, int kmer) {
+        if (!cacheFile.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(cacheFile))) {
+            return in.readLong() == MAGIC
+                    && in.readLong() == kmer
+                    && in.readLong() == hostFile.length()
+                    && in.readLong() == hostFile.lastModified()
+                    && in.readLong() == (cacheFile.length() - HEADER_SIZE) / Long.BYTES;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Build the cache file.
+     * The cache file is written under a temporary name and renamed when it is complete; the temporary file
+     * is deleted if the build fails or is stopped.
+     *
+     * @param hostFile  host genome fasta file
+     * @param kmer      k-mer
+     * @param cacheFile cache file
+     * @throws IOException if the host genome could not be read or the cache file could not be created
+     */
+    private static void build(File hostFile, int kmer, File cacheFile) throws IOException {
+        long budget = Math.min(Runtime.getRuntime().maxMemory() / 4, 1L << 30);
+        long[] keys = new long[(int) Math.max(budget / Long.BYTES, 1 << 16)];
+        int n = 0;
+        List<File> runs = new ArrayList<>();
+        File directory = cacheFile.getAbsoluteFile().getParentFile();
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+
+        try {
+            try (InputStream in = open_fasta(hostFile)) {
+                KeyGenerator generator = new KeyGenerator(kmer);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                boolean header = false;
+                int r;
+                while ((r = in.read(buffer)) != -1) {
+                    if (Thread.currentThread().isInterrupted()) {   // for Stop process
+                        throw new InterruptedIOException();
+                    }
+                    for (int i = 0; i < r; i++) {
+                        byte c = buffer[i];
+                        if (c == '>') {
+                            header = true;
+                            generator.reset();
+                        } else if (c == '\n' || c == '\r') {
+                            header = false;
+                        } else if (!header) {
+                            byte code = CODE[c & 0xff];
+                            if (code < 0) {
+                                generator.reset();
+                                continue;
+                            }
+                            long key = generator.next(code);
+                            if (generator.isFull()) {
+                                if (n == keys.length) {
+                                    runs.add(write_run(keys, n, directory));
+                                    n = 0;
+                                }
+                                keys[n++] = key;
+                            }
+                        }
+                    }
+                }
+            }
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile), BUFFER_SIZE))) {
+                out.writeLong(MAGIC);
+                out.writeLong(kmer);
+                out.writeLong(hostFile.length());
+                out.writeLong(hostFile.lastModified());
+                out.writeLong(0L);  // count (written after the merge)
+
+                long count;
+                if (runs.isEmpty()) {
+                    count = write_sorted(keys, n, out);
+                } else {
+                    if (n > 0) {
+                        runs.add(write_run(keys, n, directory));
+                    }
+                    keys = null;
+                    count = merge_runs(runs, out);
+                }
+                out.flush();
+                try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+                    raf.seek(HEADER_SIZE - Long.BYTES);
+                    raf.writeLong(count);
+                }
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            for (File run : runs) {
+                Files.deleteIfExists(run.toPath());
+            }
+            Files.deleteIfExists(tmpFile.toPath());     // left only by a failed or stopped build
+        }
+    }
+
+    /**
+     * Open the host genome fasta file.
+     *
+     * @param hostFile host genome fasta file
+     * @return input stream
+     * @throws IOException if the file could not be opened
+     */
+    private static InputStream open_fasta(File hostFile) throws IOException {
+        InputStream in = new FileInputStream(hostFile);
+        return hostFile.getName().endsWith(".gz") ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+
+    /**
+     * Sort the keys and write them (without duplicates).
+     *
+     * @param keys keys
+     * @param n    number of keys
+     * @param out  output stream
+     * @return number of keys written
+     * @throws IOException if an I/O error occurs
+     */
+    private static long write_sorted(long[] keys, int n, DataOutputStream out) throws IOException {
+        Arrays.parallelSort(keys, 0, n);
+        long count = 0L;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                out.writeLong(keys[i]);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write a sorted run to a temporary file.
+     *
+     * @param keys      keys
+     * @param n         number of keys
+     * @param directory directory of the temporary file
+     * @return run file
+     * @throws IOException if an I/O error occurs
+     */
+    private static File write_run(long[] keys, int n, File directory) throws IOException {
+        File run = File.createTempFile("host", ".run", directory);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+            write_sorted(keys, n, out);
+        }
+        return run;
+    }
+
+    /**
+     * Merge the sorted runs (without duplicates).
+     *
+     * @param runs run files
+     * @param out  output stream
+     * @return number of keys written
+     * @throws IOException if an I/O error occurs
+     */
+    private static long merge_runs(List<File> runs, DataOutputStream out) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(), (a, b) -> Long.compare(a.value, b.value));
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+
+            long count = 0L;
+            long last = 0L;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                if (count == 0 || reader.value != last) {
+                    last = reader.value;
+                    out.writeLong(last);
+                    count++;
+                }
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            return count;
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+}
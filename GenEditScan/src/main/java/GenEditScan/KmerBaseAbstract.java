@@ -36,6 +36,11 @@ abstract public class KmerBaseAbstract {
      */
     protected int ifastq = 0;
 
+    /**
+     * Windows skipped and bases trimmed per file
+     */
+    protected ScanCounters scanCounters = new ScanCounters(0);
+
     //========================================================================//
     // Public function
     //========================================================================//
@@ -45,6 +50,15 @@ abstract public class KmerBaseAbstract {
     public KmerBaseAbstract() {
     }
 
+    /**
+     * Get the windows skipped and the bases trimmed per file.
+     *
+     * @return scan counters
+     */
+    public ScanCounters getScanCounters() {
+        return this.scanCounters;
+    }
+
     //========================================================================//
     // Abstract function
     //========================================================================//
@@ -64,4 +78,14 @@ abstract public class KmerBaseAbstract {
      * @param node Base screen for dialog
      */
     abstract void read_wildTypeFiles(int ifile, Node node);
+
+    /**
+     * Abstract function that read the R1 and R2 files of a pair.
+     *
+     * @param mutant true:mutant, false:wild type
+     * @param ifile File index of the R1 file
+     * @param imate File index of the R2 file
+     * @param node Base screen for dialog
+     */
+    abstract void read_pairFiles(boolean mutant, int ifile, int imate, Node node);
 }
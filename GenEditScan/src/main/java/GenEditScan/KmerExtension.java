@@ -26,6 +26,11 @@ public class KmerExtension extends KmerBaseAbstract {
      */
     protected FastqExtension fastqExtension;
 
+    /**
+     * Statistics files of the vector constructs (only one unless multi-construct screening)
+     */
+    private final List<StatisticsFile> statisticsFiles;
+
     //========================================================================//
     // Local parameters
     //========================================================================//
@@ -48,9 +53,22 @@ public class KmerExtension extends KmerBaseAbstract {
      * @param statisticsFile   Statistics file class
      */
     public KmerExtension(Options options, BitwiseOperation bitwiseOperation, StatisticsFile statisticsFile) {
+        this(options, bitwiseOperation, List.of(statisticsFile));
+    }
+
+    /**
+     * Extension analysis of the k-mer class constructor (multi-construct screening).
+     * The significant k-mers of all constructs are extended in one pass.
+     *
+     * @param options          Execution options class
+     * @param bitwiseOperation Bitwise operation class
+     * @param statisticsFiles  Statistics files of the vector constructs
+     */
+    public KmerExtension(Options options, BitwiseOperation bitwiseOperation, List<StatisticsFile> statisticsFiles) {
         super.options = options;
         super.bitwiseOperation = bitwiseOperation;
-        super.statisticsFile = statisticsFile;
+        super.statisticsFile = statisticsFiles.get(0);
+        this.statisticsFiles = statisticsFiles;
 
         // FASTQ extension
         this.fastqExtension = new FastqExtension(super.options, super.bitwiseOperation);
@@ -65,31 +83,36 @@ public class KmerExtension extends KmerBaseAbstract {
         super.options.setRuntimeMessage("Now preparing the both sides of the k-mer process.");
 
         this.initialize_counterMer();
-        final String vectorArray = this.statisticsFile.getVectorArray();
-        final Map<Integer, Double> fdr = this.statisticsFile.getFdr();
 
         for (int i = 0; i < super.options.number_of_samples(); i++) {
             this.merCounter.add(new HashMap<>());
         }
 
-        for (Map.Entry<Integer, Double> entry : fdr.entrySet()) {
-            if (entry.getValue() <= this.options.getThreshold_fdr()) {
-                String mer = vectorArray.substring(entry.getKey(), entry.getKey() + super.options.getKmer());
-                // Complementary sequence of this.kmer
-                String revMer = CommonTools.complementaryMer(mer);
-                this.mutantMerCounter.put(mer, new ArrayList<>());
-                this.mutantMerCounter.put(revMer, new ArrayList<>());
-                this.wildTypeMerCounter.put(mer, new ArrayList<>());
-                this.wildTypeMerCounter.put(revMer, new ArrayList<>());
-                for (int i = 0; i < super.options.number_of_samples(); i++) {
-                    this.merCounter.get(i).put(mer, new ArrayList<>());
-                    this.merCounter.get(i).put(revMer, new ArrayList<>());
+        for (StatisticsFile constructFile : this.statisticsFiles) {
+            final String vectorArray = constructFile.getVectorArray();
+            final Map<Integer, Double> fdr = constructFile.getFdr();
+
+            for (Map.Entry<Integer, Double> entry : fdr.entrySet()) {
+                if (entry.getValue() <= this.options.getThreshold_fdr()) {
+                    int pos = constructFile.getPosition(entry.getKey());
+                    String mer = vectorArray.substring(pos, pos + super.options.getKmer());
+                    // Complementary sequence of this.kmer
+                    String revMer = CommonTools.complementaryMer(mer);
+                    this.mutantMerCounter.put(mer, new ArrayList<>());
+                    this.mutantMerCounter.put(revMer, new ArrayList<>());
+                    this.wildTypeMerCounter.put(mer, new ArrayList<>());
+                    this.wildTypeMerCounter.put(revMer, new ArrayList<>());
+                    for (int i = 0; i < super.options.number_of_samples(); i++) {
+                        this.merCounter.get(i).put(mer, new ArrayList<>());
+                        this.merCounter.get(i).put(revMer, new ArrayList<>());
+                    }
                 }
             }
         }
 
         this.create_chunk(this.mutantMerCounter);
         this.merTotalCounter = new long[super.options.number_of_samples()];
+        super.scanCounters = new ScanCounters(super.options.number_of_samples());
 
         // Progress bar start
         CommonTools.kmerExtensionProgress(super.options, 0);
@@ -110,7 +133,7 @@ public class KmerExtension extends KmerBaseAbstract {
 
         // mutant
         boolean ret = this.fastqExtension.read_fastqFile(super.options.getMutant_files().get(ifile),
-                this.merCounter, this.merTotalCounter, ifile);
+                this.merCounter, this.merTotalCounter, super.scanCounters, ifile);
 
         if (ret) {
             // update progress bar
@@ -138,7 +161,7 @@ public class KmerExtension extends KmerBaseAbstract {
 
         // wild type
         boolean ret = this.fastqExtension.read_fastqFile(this.options.getWildType_files().get(ifile),
-                this.merCounter, this.merTotalCounter, ifile + nMutant);
+                this.merCounter, this.merTotalCounter, super.scanCounters, ifile + nMutant);
 
         if (ret) {
             // update progress bar
@@ -150,6 +173,37 @@ public class KmerExtension extends KmerBaseAbstract {
         }
     }
 
+    /**
+     * Read the R1 and R2 files of a pair together.
+     *
+     * @param mutant true:mutant, false:wild type
+     * @param ifile  file index of the R1 file
+     * @param imate  file index of the R2 file
+     * @param node   base screen for dialog
+     */
+    @Override
+    public void read_pairFiles(boolean mutant, int ifile, int imate, Node node) {
+        List<String> files = mutant ? super.options.getMutant_files() : super.options.getWildType_files();
+        int offset = mutant ? 0 : super.options.getMutant_files().size();
+        super.options.setRuntimeMessage("Now both sides of k-mer process [" + (mutant ? "Mutant" : "Wild type") + "] "
+                + (ifile + 1) + "+" + (imate + 1) + "/" + files.size() + " (" + new File(files.get(ifile)).getName()
+                + ", " + new File(files.get(imate)).getName() + ").");
+
+        boolean ret = this.fastqExtension.read_fastqFile(files.get(ifile), files.get(imate),
+                this.merCounter, this.merTotalCounter, super.scanCounters, ifile + offset, imate + offset);
+
+        if (ret) {
+            // update progress bar (two files)
+            super.ifastq = CommonTools.increment(super.ifastq);
+            super.ifastq = CommonTools.increment(super.ifastq);
+            CommonTools.kmerExtensionProgress(super.options, super.ifastq);
+        } else {
+            String message = "Fastq files of " + (mutant ? "mutant" : "wild type") + " (" + files.get(ifile) + ", "
+                    + files.get(imate) + ") could not be read.";
+            CommonTools.runTimeErrorMessage(message, "red", node);
+        }
+    }
+
     /**
      * Create the outside file.
      *
@@ -159,8 +213,19 @@ public class KmerExtension extends KmerBaseAbstract {
     public TextField create_outsideFile(Node node) {
         if (super.options.getThreshold_fdr() >= 0.0) {
             this.sum_merCounter();
-            this.statisticsFile.set_merCount(this.mutantMerTotalCounter, this.wildTypeMerTotalCounter);
-            return this.statisticsFile.create_outsideFile(this.mutantMerCounter, this.wildTypeMerCounter, node);
+
+            TextField outsideTextField = null;
+            for (StatisticsFile constructFile : this.statisticsFiles) {
+                constructFile.set_merCount(this.mutantMerTotalCounter, this.wildTypeMerTotalCounter);
+                TextField textField = constructFile.create_outsideFile(this.mutantMerCounter, this.wildTypeMerCounter, node);
+                if (Objects.isNull(textField)) {
+                    return null;
+                }
+                if (Objects.isNull(outsideTextField)) {
+                    outsideTextField = textField;
+                }
+            }
+            return outsideTextField;
         }
         return null;
     }
@@ -200,6 +265,7 @@ public class KmerExtension extends KmerBaseAbstract {
                 chunk[dnabit] = 1;
             }
         }
+        this.bitwiseOperation.create_kmerIndex(merCounter.keySet());
     }
 
     /**
@@ -0,0 +1,204 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * K-mer index class.
+ * Each k-mer of the dictionary gets a slot number, and a window of a read is looked up by a rolling key
+ * that is updated in O(1) per base: the 2-bit code of the k-mer for k &lt;= 31, or a polynomial hash for larger k.
+ * The key only selects candidates, and a candidate is accepted after comparing its bases with the window,
+ * so reads containing N or lower case letters (which share the 2-bit code of T) never match by mistake.
+ *
+ * @author NARO
+ */
+public final class KmerIndex {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * maximum k-mer for the 2-bit code (64 bit / 2 bit - 1)
+     */
+    private static final int MAX_2BIT_KMER = 31;
+
+    /**
+     * base of the polynomial hash (odd)
+     */
+    private static final long BASE = 0x100000001b3L;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final int kmer;
+    private final boolean twoBit;       // true:2-bit code, false:polynomial hash
+    private final long twoBitMask;
+    private final long basePowK;        // BASE^k
+    private final byte[] dna2bit;
+
+    /**
+     * k-mers of the slots
+     */
+    private final String[] mers;
+
+    /**
+     * bases of the slots (slot * kmer is the first base)
+     */
+    private final byte[] bases;
+
+    /**
+     * open addressing table (key and slot + 1, 0 is empty)
+     */
+    private final long[] tableKey;
+    private final int[] tableSlot;
+    private final int tableMask;
+    private final int tableShift;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * K-mer index class constructor.
+     *
+     * @param mers     k-mers of the dictionary (shorter ones, such as the complementary sequence of
+     *                 a k-mer containing N, never match a window and are left out)
+     * @param kmer     k-mer
+     * @param dna2bit  DNA expressed in 2 bits
+     */
+    public KmerIndex(Collection<String> mers, int kmer, byte[] dna2bit) {
+        this.kmer = kmer;
+        this.twoBit = kmer <= MAX_2BIT_KMER;
+        this.twoBitMask = this.twoBit ? (1L << (2 * kmer)) - 1 : -1L;
+        long pow = 1L;
+        for (int i = 0; i < kmer; i++) {
+            pow *= BASE;
+        }
+        this.basePowK = pow;
+        this.dna2bit = dna2bit;
+
+        this.mers = mers.stream().filter(mer -> mer.length() == kmer).toArray(String[]::new);
+        this.bases = new byte[this.mers.length * kmer];
+        int capacity = Integer.highestOneBit(Math.max(this.mers.length, 1) * 2 - 1) * 2;
+        this.tableKey = new long[capacity];
+        this.tableSlot = new int[capacity];
+        this.tableMask = capacity - 1;
+        this.tableShift = 64 - Integer.numberOfTrailingZeros(capacity);
+
+        for (int slot = 0; slot < this.mers.length; slot++) {
+            byte[] mer = this.mers[slot].getBytes(StandardCharsets.ISO_8859_1);
+            System.arraycopy(mer, 0, this.bases, slot * kmer, kmer);
+            long key = this.key(mer, 0);
+            int i = this.home(key);
+            while (this.tableSlot[i] != 0) {
+                i = (i + 1) & this.tableMask;
+            }
+            this.tableKey[i] = key;
+            this.tableSlot[i] = slot + 1;
+        }
+    }
+
+    /**
+     * Calculate the key of the window.
+     *
+     * @param seq sequence
+     * @param off first base of the window
+     * @return key
+     */
+    public long key(byte[] seq, int off) {
+        long key = 0L;
+        for (int i = off; i < off + this.kmer; i++) {
+            key = this.twoBit ? (key << 2) | this.dna2bit[seq[i] & 0x7f] : key * BASE + seq[i];
+        }
+        return key & this.twoBitMask;
+    }
+
+    /**
+     * Update the key to the next window.
+     *
+     * @param key key of the current window
+     * @param out first base of the current window
+     * @param in  last base of the next window
+     * @return key of the next window
+     */
+    public long roll(long key, byte out, byte in) {
+        if (this.twoBit) {
+            return ((key << 2) | this.dna2bit[in & 0x7f]) & this.twoBitMask;
+        }
+        return key * BASE - out * this.basePowK + in;
+    }
+
+    /**
+     * Find the slot of the window.
+     *
+     * @param key key of the window
+     * @param seq sequence
+     * @param off first base of the window
+     * @return slot, or -1 if the window is not in the dictionary
+     */
+    public int find(long key, byte[] seq, int off) {
+        int i = this.home(key);
+        int slot;
+        while ((slot = this.tableSlot[i]) != 0) {
+            if (this.tableKey[i] == key && this.matches(slot - 1, seq, off)) {
+                return slot - 1;
+            }
+            i = (i + 1) & this.tableMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the k-mer of the slot.
+     *
+     * @param slot slot
+     * @return k-mer
+     */
+    public String getMer(int slot) {
+        return this.mers[slot];
+    }
+
+    /**
+     * Number of slots.
+     *
+     * @return number of k-mers in the dictionary
+     */
+    public int size() {
+        return this.mers.length;
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Home position of the key in the table.
+     *
+     * @param key key
+     * @return table index
+     */
+    private int home(long key) {
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> this.tableShift) & this.tableMask;
+    }
+
+    /**
+     * Compare the bases of the slot with the window.
+     *
+     * @param slot slot
+     * @param seq  sequence
+     * @param off  first base of the window
+     * @return true:same, false:different
+     */
+    private boolean matches(int slot, byte[] seq, int off) {
+        int base = slot * this.kmer;
+        for (int i = 0; i < this.kmer; i++) {
+            if (this.bases[base + i] != seq[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -8,13 +8,14 @@ import javafx.scene.Node;
 import javafx.scene.control.TextField;
 import javafx.util.Pair;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Match analysis of the k-mer class.
@@ -35,7 +36,7 @@ public class KmerMatch extends KmerBaseAbstract {
     //========================================================================//
     private File outMutantMerFile;
     private File outWildTypeMerFile;
-    private final Map<Integer, Pair<String, String>> vectorPosPair = new HashMap<>();
+    private final Map<Integer, Pair<String, String>> vectorPosPair = new TreeMap<>();   // in the position order
     private final Map<String, Integer> mutantMerCounter = new HashMap<>();
     private Map<String, Integer> wildTypeMerCounter = new HashMap<>();
     private final List<Map<String, Integer>> merCounter = new ArrayList<>();
@@ -43,6 +44,17 @@ public class KmerMatch extends KmerBaseAbstract {
     private long wildTypeMerTotalCounter;
     private long[] merTotalCounter;
 
+    /**
+     * Statistics files of the vector constructs (only one unless multi-construct screening)
+     */
+    private final List<StatisticsFile> statisticsFiles = new ArrayList<>();
+
+    /**
+     * Background writing of the merFreq.txt files
+     */
+    private ExecutorService writeService;
+    private final Map<File, Future<Boolean>> writeFutures = new LinkedHashMap<>();
+
     //========================================================================//
     // Public function
     //========================================================================//
@@ -77,14 +89,62 @@ public class KmerMatch extends KmerBaseAbstract {
 
         // Read vector file.
         VectorSequence vectorSequence = new VectorSequence(super.options, super.bitwiseOperation);
-        if (!vectorSequence.read_vectorFile(this.mutantMerCounter, this.vectorPosPair)) {
+        if (!vectorSequence.read_regionFile()) {
+            String errorMessage = "Region file (" + super.options.getRegionFile() + ") read error.";
+            CommonTools.runTimeErrorMessage(errorMessage, "red", node);
+            return false;
+        }
+        HostKmerIndex hostKmerIndex = null;
+        if (!Objects.isNull(super.options.getHostReference()) && !super.options.getHostReference().isEmpty()) {
+            try {
+                hostKmerIndex = HostKmerIndex.open(new File(super.options.getHostReference()),
+                        super.options.getKmer(), super.options);
+            } catch (IOException e) {
+                String errorMessage = "Host genome's fasta file (" + super.options.getHostReference() + ") read error.";
+                CommonTools.runTimeErrorMessage(errorMessage, "red", node);
+                return false;
+            }
+            vectorSequence.setHostKmerIndex(hostKmerIndex);
+            super.options.setRuntimeMessage("Now vector sequence process (" + file.getName() + ").");
+        }
+        boolean ret = super.options.getMultiConstruct()
+                ? vectorSequence.read_constructFile(this.mutantMerCounter)
+                : vectorSequence.read_vectorFile(this.mutantMerCounter, this.vectorPosPair);
+        if (hostKmerIndex != null) {
+            hostKmerIndex.close();
+        }
+        if (!ret) {
             String errorMessage = "Vector's fasta file (" + super.options.getVector_file() + ") read error.";
             CommonTools.runTimeErrorMessage(errorMessage, "red", node);
             return false;
         }
 
-        this.statisticsFile.setVectorArray(vectorSequence.getVectorArray());
-        this.statisticsFile.setVectorPosPair(this.vectorPosPair);
+        if (super.options.getMultiConstruct()) {
+            // One statistics file per construct, sharing the k-mer dictionary
+            for (VectorConstruct construct : vectorSequence.getConstructs()) {
+                StatisticsFile constructFile = this.statisticsFiles.isEmpty()
+                        ? this.statisticsFile : new StatisticsFile(super.options);
+                constructFile.setConstruct(construct.name);
+                constructFile.setVectorName(construct.record);
+                constructFile.setVectorArray(construct.vectorArray);
+                constructFile.setVectorPosPair(construct.posPair);
+                this.statisticsFiles.add(constructFile);
+            }
+        } else {
+            this.statisticsFile.setVectorArray(vectorSequence.getVectorArray());
+            this.statisticsFile.setVectorName(vectorSequence.getVectorName());
+            this.statisticsFile.setVectorPosPair(this.vectorPosPair);
+            this.statisticsFiles.add(this.statisticsFile);
+        }
+
+        // Vector positions shared with the host genome
+        if (hostKmerIndex != null) {
+            for (StatisticsFile constructFile : this.statisticsFiles) {
+                if (!constructFile.create_hostFile(vectorSequence.getHostMers(), node)) {
+                    return false;
+                }
+            }
+        }
 
         this.wildTypeMerCounter = new HashMap<>(this.mutantMerCounter);
 
@@ -93,6 +153,9 @@ public class KmerMatch extends KmerBaseAbstract {
         }
 
         this.merTotalCounter = new long[super.options.number_of_samples()];
+        super.scanCounters = new ScanCounters(super.options.number_of_samples());
+        this.fastqMatch.setEarlyStop(super.options.getEarlyStop() > 0 ? new EarlyStop(super.options,
+                super.bitwiseOperation, this.statisticsFiles, super.scanCounters) : null);
 
         // Progress bar start
         CommonTools.kmerMatchProgress(super.options, 0);
@@ -113,7 +176,7 @@ public class KmerMatch extends KmerBaseAbstract {
 
         // mutant
         boolean ret = this.fastqMatch.read_fastqFile(super.options.getMutant_files().get(ifile),
-                this.merCounter, this.merTotalCounter, ifile);
+                this.merCounter, this.merTotalCounter, super.scanCounters, ifile);
 
         if (ret) {
             // update progress bar
@@ -141,7 +204,7 @@ public class KmerMatch extends KmerBaseAbstract {
 
         // wild type
         boolean ret = this.fastqMatch.read_fastqFile(super.options.getWildType_files().get(ifile),
-                this.merCounter, this.merTotalCounter, ifile + nMutant);
+                this.merCounter, this.merTotalCounter, super.scanCounters, ifile + nMutant);
 
         if (ret) {
             // update progress bar
@@ -153,6 +216,37 @@ public class KmerMatch extends KmerBaseAbstract {
         }
     }
 
+    /**
+     * Read the R1 and R2 files of a pair together.
+     *
+     * @param mutant true:mutant, false:wild type
+     * @param ifile  file index of the R1 file
+     * @param imate  file index of the R2 file
+     * @param node   base screen for dialog
+     */
+    @Override
+    public void read_pairFiles(boolean mutant, int ifile, int imate, Node node) {
+        List<String> files = mutant ? super.options.getMutant_files() : super.options.getWildType_files();
+        int offset = mutant ? 0 : super.options.getMutant_files().size();
+        super.options.setRuntimeMessage("Now k-mer search process [" + (mutant ? "Mutant" : "Wild type") + "] "
+                + (ifile + 1) + "+" + (imate + 1) + "/" + files.size() + " (" + new File(files.get(ifile)).getName()
+                + ", " + new File(files.get(imate)).getName() + ").");
+
+        boolean ret = this.fastqMatch.read_fastqFile(files.get(ifile), files.get(imate),
+                this.merCounter, this.merTotalCounter, super.scanCounters, ifile + offset, imate + offset);
+
+        if (ret) {
+            // update progress bar (two files)
+            super.ifastq = CommonTools.increment(super.ifastq);
+            super.ifastq = CommonTools.increment(super.ifastq);
+            CommonTools.kmerMatchProgress(super.options, super.ifastq);
+        } else {
+            String message = "Fastq files of " + (mutant ? "mutant" : "wild type") + " (" + files.get(ifile) + ", "
+                    + files.get(imate) + ") could not be read.";
+            CommonTools.runTimeErrorMessage(message, "red", node);
+        }
+    }
+
     /**
      * Create the statistics file.
      *
@@ -161,9 +255,66 @@ public class KmerMatch extends KmerBaseAbstract {
      */
     public TextField create_statisticsFile(Node node) {
         this.sum_merCounter();
-        this.control_freqFile(node);
-        this.statisticsFile.set_merCount(this.mutantMerTotalCounter, this.wildTypeMerTotalCounter);
-        return this.statisticsFile.create_statisticsFile(node);
+        this.control_freqFile();
+
+        TextField statisticsTextField = null;
+        for (StatisticsFile constructFile : this.statisticsFiles) {
+            constructFile.set_merCount(this.mutantMerTotalCounter, this.wildTypeMerTotalCounter);
+            TextField textField = constructFile.create_statisticsFile(node);
+            if (Objects.isNull(textField)) {
+                return null;
+            }
+            if (Objects.isNull(statisticsTextField)) {
+                statisticsTextField = textField;
+            }
+        }
+        return statisticsTextField;
+    }
+
+    /**
+     * Wait for the merFreq.txt files written in the background.
+     *
+     * @param node base screen for dialog
+     * @return true:write success, false:write failure
+     */
+    public boolean join_merFreqFiles(Node node) {
+        boolean ret = true;
+        for (Map.Entry<File, Future<Boolean>> entry : this.writeFutures.entrySet()) {
+            boolean written;
+            try {
+                written = entry.getValue().get();
+            } catch (InterruptedException | ExecutionException e) {
+                written = false;
+            }
+            if (!written) {
+                String errorMessage = "Could not write file (" + entry.getKey().getPath() + ").";
+                CommonTools.runTimeErrorMessage(errorMessage, "red", node);
+                ret = false;
+            }
+        }
+        this.writeFutures.clear();
+        return ret;
+    }
+
+    /**
+     * Get the statistics files of the vector constructs.
+     *
+     * @return statistics files
+     */
+    public List<StatisticsFile> getStatisticsFiles() {
+        return this.statisticsFiles;
+    }
+
+    /**
+     * Stop writing the merFreq.txt files.
+     * A file being written is deleted by its writer when it is interrupted (see create_merFreqFile),
+     * and a file not started yet is not created.
+     */
+    public void cancel_merFreqFiles() {
+        if (Objects.nonNull(this.writeService)) {
+            this.writeService.shutdownNow();
+        }
+        this.writeFutures.clear();
     }
 
     //============================================================================//
@@ -188,6 +339,7 @@ public class KmerMatch extends KmerBaseAbstract {
         this.mutantMerCounter.clear();
         this.wildTypeMerCounter.clear();
         this.merCounter.clear();
+        this.statisticsFiles.clear();
         this.mutantMerTotalCounter = 0L;
         this.wildTypeMerTotalCounter = 0L;
         this.merTotalCounter = null;
@@ -198,31 +350,44 @@ public class KmerMatch extends KmerBaseAbstract {
 
     /**
      * Output the results of the mer counts to files.
+     * The mutant and wild type files are written concurrently in the background,
+     * because neither the G-test nor the extension analysis reads them (see join_merFreqFiles).
      */
-    private void control_freqFile(Node node) {
+    private void control_freqFile() {
+        this.writeService = Executors.newFixedThreadPool(2);
+
         // Write mutant file.
         if (!super.options.getMutant_files().isEmpty()) {
-            List<Integer> mutantPosFreq = this.set_posFreq(this.mutantMerCounter);
-            this.statisticsFile.setMutantPosFreq(mutantPosFreq);
-            this.create_merFreqFile(this.outMutantMerFile, this.mutantMerCounter, node);
+            for (StatisticsFile constructFile : this.statisticsFiles) {
+                List<Integer> mutantPosFreq = this.set_posFreq(constructFile.getVectorPosPair(), this.mutantMerCounter);
+                constructFile.setMutantPosFreq(mutantPosFreq);
+            }
+            this.writeFutures.put(this.outMutantMerFile, this.writeService.submit(
+                    () -> this.create_merFreqFile(this.outMutantMerFile, this.mutantMerCounter)));
         }
 
         // Write wild type file.
         if (!super.options.getWildType_files().isEmpty()) {
-            List<Integer> wildTypePosFreq = this.set_posFreq(this.wildTypeMerCounter);
-            this.statisticsFile.setWildTypePosFreq(wildTypePosFreq);
-            this.create_merFreqFile(this.outWildTypeMerFile, this.wildTypeMerCounter, node);
+            for (StatisticsFile constructFile : this.statisticsFiles) {
+                List<Integer> wildTypePosFreq = this.set_posFreq(constructFile.getVectorPosPair(), this.wildTypeMerCounter);
+                constructFile.setWildTypePosFreq(wildTypePosFreq);
+            }
+            this.writeFutures.put(this.outWildTypeMerFile, this.writeService.submit(
+                    () -> this.create_merFreqFile(this.outWildTypeMerFile, this.wildTypeMerCounter)));
         }
+
+        this.writeService.shutdown();
     }
 
     /**
      * Set the position frequency information.
      *
+     * @param posPair    vector position mer pairs
      * @param merCounter mer and its counts
      */
-    private List<Integer> set_posFreq(Map<String, Integer> merCounter) {
+    private List<Integer> set_posFreq(Map<Integer, Pair<String, String>> posPair, Map<String, Integer> merCounter) {
         List<Integer> posBothFreq = new ArrayList<>();
-        for (Map.Entry<Integer, Pair<String, String>> entry : this.vectorPosPair.entrySet()) {
+        for (Map.Entry<Integer, Pair<String, String>> entry : posPair.entrySet()) {
             int merPlusCounter = merCounter.get(entry.getValue().getKey());
             int merMinusCounter = merCounter.get(entry.getValue().getValue());
             int merBothCounter = merPlusCounter + merMinusCounter;
@@ -233,23 +398,32 @@ public class KmerMatch extends KmerBaseAbstract {
 
     /**
      * Output the merFreq.txt file.
+     * A file that could not be written to the end (write failure or interruption) is deleted,
+     * so that a partial file is not taken for a result.
      *
      * @param outMer     merFreq.txt file
      * @param merCounter mer and its counts
+     * @return true:write success, false:write failure
      */
-    private void create_merFreqFile(File outMer, Map<String, Integer> merCounter, Node node) {
-        try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(outMer.getPath()))) {
-            PrintWriter pw = new PrintWriter(bw);
-            List<String> sortedKeys = new ArrayList<>(merCounter.keySet());
-            Collections.sort(sortedKeys);
+    private boolean create_merFreqFile(File outMer, Map<String, Integer> merCounter) {
+        boolean written = false;
+        try (TextFileWriter tw = new TextFileWriter(Files.newOutputStream(outMer.toPath()))) {
+            String[] sortedKeys = merCounter.keySet().toArray(new String[0]);
+            Arrays.sort(sortedKeys);
             for (String key : sortedKeys) {
-                pw.println(key + "\t" + merCounter.get(key));
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                tw.print(key).tab().print(merCounter.get(key)).println();
             }
-            pw.close();
+            written = !Thread.currentThread().isInterrupted();
         } catch (IOException e) {
-            String errorMessage = "Could not read file (" + outMer.getPath() + ").";
-            new ErrorDialogueController(errorMessage, "red", node);
+            // deleted below
+        }
+        if (!written) {
+            outMer.delete();
         }
+        return written;
     }
 
     /**
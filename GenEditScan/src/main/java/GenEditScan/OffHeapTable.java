@@ -0,0 +1,292 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap count table class (open addressing with long keys, outside the Java heap).
+ * The flank pairs of the k-mer extension are counted here instead of in lists of boxed pairs on the heap.
+ * A record holds the key, the count, the first occurrence and the bases of the two flanks, and the index holds
+ * only the offsets of the records (the key is kept once, in its record), probed linearly with the mixed key.
+ * Records with the same key are told apart by their flanks, so the counts are exact. The index and the records grow by doubling up to the
+ * footprint given to the table, and a table that would exceed it fails with an IllegalStateException.
+ * The buffers are direct byte buffers, counted against the direct memory limit of the JVM (see
+ * Options.direct_memoryLimit). close() frees nothing: it only drops the references at the end of each fastq file,
+ * and the memory is returned when the garbage collector collects the buffers (the Foreign Function and Memory API,
+ * which frees the memory at once, is a preview API in Java 21). A buffer that cannot be reserved fails with
+ * the same IllegalStateException as a full table.
+ *
+ * @author NARO
+ */
+public class OffHeapTable implements AutoCloseable {
+    //========================================================================//
+    // Public class
+    //========================================================================//
+
+    /**
+     * Visitor of the records.
+     */
+    public interface Visitor {
+        /**
+         * Visit a record.
+         *
+         * @param key    key
+         * @param count  count
+         * @param first  first occurrence
+         * @param record record (see flank)
+         */
+        void visit(long key, int count, long first, int record);
+    }
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * index entry: record + 1 (int, 0:empty)
+     */
+    private static final int ENTRY_SIZE = 4;
+
+    /**
+     * record header: key (long), count (int), first occurrence (long)
+     */
+    private static final int HEADER_SIZE = 20;
+
+    private static final int INITIAL_ENTRIES = 1 << 12;
+    private static final int INITIAL_RECORDS = 1 << 16;
+    private static final int MAX_BUFFER = Integer.MAX_VALUE - 8;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final int flank;                // bases of a flank
+    private final int recordSize;
+    private final long maxBytes;
+    private ByteBuffer index;
+    private ByteBuffer records;
+    private int mask;
+    private int size = 0;
+    private int used = 0;                   // bytes of the records
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Off-heap count table class constructor.
+     *
+     * @param flank    bases of each flank
+     * @param maxBytes footprint of the table
+     */
+    public OffHeapTable(int flank, long maxBytes) {
+        this.flank = flank;
+        this.recordSize = HEADER_SIZE + 2 * flank;
+        this.maxBytes = maxBytes;
+        int entries = INITIAL_ENTRIES;
+        while (entries > 16 && (long) entries * ENTRY_SIZE * 4 > maxBytes) {
+            entries >>= 1;
+        }
+        this.check_footprint((long) entries * ENTRY_SIZE + this.recordSize);
+        this.index = allocate(entries * ENTRY_SIZE);
+        this.records = allocate((int) Math.max(this.recordSize,
+                Math.min(INITIAL_RECORDS, maxBytes - (long) entries * ENTRY_SIZE)));
+        this.mask = entries - 1;
+    }
+
+    /**
+     * Add to the count of the key (and flanks).
+     *
+     * @param key   key
+     * @param seq   bases of the flanks
+     * @param left  first base of the left flank
+     * @param right first base of the right flank
+     * @param count count to be added
+     * @param first occurrence (the smallest is kept)
+     */
+    public void add(long key, byte[] seq, int left, int right, int count, long first) {
+        int pos = (int) mix(key) & this.mask;
+        while (true) {
+            int entry = pos * ENTRY_SIZE;
+            int record = this.index.getInt(entry) - 1;
+            if (record < 0) {
+                break;
+            }
+            if (this.records.getLong(record) == key && this.same_flanks(record, seq, left, right)) {
+                this.records.putInt(record + 8, this.records.getInt(record + 8) + count);
+                if (first < this.records.getLong(record + 12)) {
+                    this.records.putLong(record + 12, first);
+                }
+                return;
+            }
+            pos = (pos + 1) & this.mask;
+        }
+
+        // New record
+        if ((long) this.used + this.recordSize > this.records.capacity()) {
+            this.grow_records();
+        }
+        int record = this.used;
+        this.records.putLong(record, key);
+        this.records.putInt(record + 8, count);
+        this.records.putLong(record + 12, first);
+        this.records.put(record + HEADER_SIZE, seq, left, this.flank);
+        this.records.put(record + HEADER_SIZE + this.flank, seq, right, this.flank);
+        this.used += this.recordSize;
+
+        this.index.putInt(pos * ENTRY_SIZE, record + 1);
+        if (++this.size * 2 > this.mask + 1) {
+            this.grow_index();
+        }
+    }
+
+    /**
+     * Visit the records in the order of their insertion.
+     *
+     * @param visitor visitor
+     */
+    public void forEach(Visitor visitor) {
+        for (int record = 0; record < this.used; record += this.recordSize) {
+            visitor.visit(this.records.getLong(record), this.records.getInt(record + 8),
+                    this.records.getLong(record + 12), record);
+        }
+    }
+
+    /**
+     * Get a flank of the record.
+     *
+     * @param record record
+     * @param right  false:left flank, true:right flank
+     * @return bases
+     */
+    public String flank(int record, boolean right) {
+        byte[] bases = new byte[this.flank];
+        this.records.get(record + HEADER_SIZE + (right ? this.flank : 0), bases);
+        return new String(bases, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Get the number of records.
+     *
+     * @return records
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Drop the buffers (the memory is not freed until the buffers are collected).
+     */
+    @Override
+    public void close() {
+        this.index = null;
+        this.records = null;
+        this.size = 0;
+        this.used = 0;
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Mix the bits of the key (MurmurHash3 finalizer).
+     *
+     * @param key key
+     * @return hash
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Compare the flanks of the record.
+     *
+     * @param record record
+     * @param seq    bases of the flanks
+     * @param left   first base of the left flank
+     * @param right  first base of the right flank
+     * @return true:same flanks
+     */
+    private boolean same_flanks(int record, byte[] seq, int left, int right) {
+        int base = record + HEADER_SIZE;
+        for (int i = 0; i < this.flank; i++) {
+            if (this.records.get(base + i) != seq[left + i]
+                    || this.records.get(base + this.flank + i) != seq[right + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Double the records.
+     */
+    private void grow_records() {
+        long capacity = Math.max(2L * this.records.capacity(), (long) this.used + this.recordSize);
+        capacity = Math.min(capacity, Math.min(MAX_BUFFER, this.maxBytes - this.index.capacity()));
+        if (capacity < (long) this.used + this.recordSize) {
+            this.check_footprint(this.maxBytes + 1);
+        }
+        ByteBuffer grown = allocate((int) capacity);
+        grown.put(0, this.records, 0, this.used);
+        this.records = grown;
+    }
+
+    /**
+     * Double the index.
+     */
+    private void grow_index() {
+        long entries = 2L * (this.mask + 1);
+        this.check_footprint(entries * ENTRY_SIZE + this.records.capacity());
+        if (entries * ENTRY_SIZE > MAX_BUFFER) {
+            this.check_footprint(this.maxBytes + 1);
+        }
+        ByteBuffer grown = allocate((int) (entries * ENTRY_SIZE));
+        int grownMask = (int) entries - 1;
+        for (int record = 0; record < this.used; record += this.recordSize) {
+            long key = this.records.getLong(record);
+            int pos = (int) mix(key) & grownMask;
+            while (grown.getInt(pos * ENTRY_SIZE) != 0) {
+                pos = (pos + 1) & grownMask;
+            }
+            grown.putInt(pos * ENTRY_SIZE, record + 1);
+        }
+        this.index = grown;
+        this.mask = grownMask;
+    }
+
+    /**
+     * Check the footprint of the table.
+     *
+     * @param bytes bytes of the index and the records
+     */
+    private void check_footprint(long bytes) {
+        if (bytes > this.maxBytes) {
+            throw new IllegalStateException("The off-heap count table is full ("
+                    + (this.maxBytes >> 10) + " KB per table). Increase OFFHEAP_MEMORY in the configuration file.");
+        }
+    }
+
+    /**
+     * Allocate a direct buffer.
+     *
+     * @param bytes capacity
+     * @return buffer
+     */
+    private static ByteBuffer allocate(int bytes) {
+        try {
+            return ByteBuffer.allocateDirect(bytes);
+        } catch (OutOfMemoryError e) {
+            throw new IllegalStateException("Could not reserve the direct memory of the off-heap count table ("
+                    + (bytes >> 10) + " KB). Decrease OFFHEAP_MEMORY in the configuration file.");
+        }
+    }
+}
@@ -7,9 +7,13 @@ package GenEditScan;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 
+import com.sun.management.HotSpotDiagnosticMXBean;
+
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -68,11 +72,21 @@ public class Options {
      */
     private final boolean checkOutsideKmer;
 
+    /**
+     * Block compression (BGZF) of the outside.txt file option
+     */
+    private final boolean compressOutside;
+
     /**
      * Number of threads
      */
     private final int threads;
 
+    /**
+     * Thread plan
+     */
+    private ThreadPlan threadPlan;
+
     /**
      * message label
      */
@@ -88,6 +102,95 @@ public class Options {
      */
     private final Instant startTime;
 
+    //========================================================================//
+    // Advanced options (set from the configuration file)
+    //========================================================================//
+    /**
+     * Multi-construct screening (one statistics file per record of the vector file)
+     */
+    private boolean multiConstruct = false;
+
+    /**
+     * Region file (BED) of the vector positions to be indexed (null:every position)
+     */
+    private String regionFile = null;
+
+    /**
+     * Host genome fasta file (k-mers shared with the host genome are reported, null:not used)
+     */
+    private String hostReference = null;
+
+    /**
+     * Exclude the k-mers shared with the host genome from counting (false:mark only)
+     */
+    private boolean hostKmerDrop = false;
+
+    /**
+     * Count the slots of a sample in a shared striped table instead of per-worker arrays (less memory)
+     */
+    private boolean stripedCounts = false;
+
+    /**
+     * Off-heap memory of the flank tables of the k-mer extension in MB, shared by the scan workers
+     * (0:flank pairs on the heap)
+     */
+    private int offHeapMemory = 0;
+
+    /**
+     * Mean Phred quality of the trimming window (0:no quality trimming)
+     */
+    private int trimQuality = 0;
+
+    /**
+     * Bases of the trimming window
+     */
+    private int trimWindow = 4;
+
+    /**
+     * Phred quality below which a base is masked to N (0:no masking)
+     */
+    private int maskQuality = 0;
+
+    /**
+     * Adapter sequence clipped from the reads (null:no adapter clipping)
+     */
+    private String trimAdapter = null;
+
+    /**
+     * Paired-end input (null:single-end, "files":R1 and R2 files, "interleaved":pairs in one file)
+     */
+    private String pairedEnd = null;
+
+    /**
+     * Memory of the duplicate read caches in MB, shared by the scan workers (0:no cache)
+     */
+    private int duplicateCache = 0;
+
+    /**
+     * Reads per round of the early stop of the k-mer match (0:read all the reads, see EarlyStop)
+     */
+    private int earlyStop = 0;
+
+    /**
+     * Positions whose significance may change between the rounds of a stable early stop
+     */
+    private int earlyStopTolerance = 0;
+
+    /**
+     * Reads consumed per file by the early stop (null:all the reads)
+     */
+    private long[] readLimits = null;
+
+    /**
+     * Fraction of the reads sampled for a preview run (0:all the reads)
+     */
+    private double preview = 0.0;
+
+    /**
+     * Seed of the preview sample
+     */
+    private long previewSeed = 0L;
+
     //========================================================================//
     // Local parameters
     //========================================================================//
@@ -121,6 +224,7 @@ public class Options {
                    String out_prefix,
                    File outDirectory,
                    boolean checkOutsideKmer,
+                   boolean compressOutside,
                    int threads,
                    Label message,
                    ProgressBar pbar) {
@@ -133,12 +237,30 @@ public class Options {
         this.out_prefix = out_prefix;
         this.outDirectory = outDirectory;
         this.checkOutsideKmer = checkOutsideKmer;
+        this.compressOutside = compressOutside;
         this.threads = threads;
         this.message = message;
         this.pbar = pbar;
         this.startTime = Instant.now();
         this.chunk_length = Math.min(this.kmer, this.MAX_CHUNKLENGTH);
         this.max_chunk_array = (int) (Math.pow(2, this.chunk_length * 2) - 1);
+
+        List<String> fastqFiles = new ArrayList<>(mutant_files);
+        fastqFiles.addAll(wildType_files);
+        this.threadPlan = new ThreadPlan(threads, fastqFiles, fastqFiles.size(), false);
+    }
+
+    /**
+     * Plan the threads again for the jobs of the files (see ThreadPlan).
+     * The options are planned with one job per file, and the work scheduler plans them again once the R1 and
+     * R2 files are paired. With the early stop every job is read at once.
+     *
+     * @param jobs number of jobs (an R1 file and its R2 file make one job)
+     */
+    public void plan_threads(int jobs) {
+        List<String> fastqFiles = new ArrayList<>(this.mutant_files);
+        fastqFiles.addAll(this.wildType_files);
+        this.threadPlan = new ThreadPlan(this.threads, fastqFiles, jobs, this.earlyStop > 0);
     }
 
     /**
@@ -150,6 +272,88 @@ public class Options {
         return this.mutant_files.size() + this.wildType_files.size();
     }
 
+    /**
+     * Maximum number of worker threads scanning one fastq file (see ThreadPlan).
+     *
+     * @return worker threads per file
+     */
+    public int scan_workers() {
+        return this.threadPlan.getWorkers();
+    }
+
+    /**
+     * Footprint of the off-heap flank table of a k-mer extension worker (the off-heap memory divided among
+     * the workers of the files read in parallel, every file with the early stop).
+     *
+     * @return bytes per table, 0:flank pairs on the heap
+     */
+    public long offHeap_tableBytes() {
+        return ((long) this.offHeapMemory << 20) / ((long) this.threadPlan.getFiles() * this.threadPlan.getWorkers());
+    }
+
+    /**
+     * Direct memory limit of the JVM (-XX:MaxDirectMemorySize, the maximum heap size if it is not set).
+     *
+     * @return bytes
+     */
+    public static long direct_memoryLimit() {
+        long limit = 0L;
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            if (bean != null) {
+                limit = Long.parseLong(bean.getVMOption("MaxDirectMemorySize").getValue());
+            }
+        } catch (IllegalArgumentException e) {
+            limit = 0L;
+        }
+        return limit > 0 ? limit : Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * Memory budget of the duplicate read cache of a scan worker (see ReadCache), divided as the off-heap memory.
+     *
+     * @return bytes per cache, 0:no cache
+     */
+    public long duplicateCache_bytes() {
+        return ((long) this.duplicateCache << 20) / ((long) this.threadPlan.getFiles() * this.threadPlan.getWorkers());
+    }
+
+    /**
+     * Hash limit of the preview sample (see FastqReader).
+     *
+     * @return records whose 53-bit hash is below the limit are sampled, -1:all the records
+     */
+    public long preview_limit() {
+        return this.preview > 0.0 && this.preview < 1.0 ? (long) (this.preview * (1L << 53)) : -1L;
+    }
+
+    /**
+     * Whether the reads are sampled for a preview run.
+     *
+     * @return true:preview run
+     */
+    public boolean preview_run() {
+        return this.preview_limit() >= 0;
+    }
+
+    /**
+     * Whether the R1 and R2 files of a pair are read together (see WorkScheduler).
+     *
+     * @return true:R1 and R2 files
+     */
+    public boolean pairedEnd_files() {
+        return "files".equals(this.pairedEnd);
+    }
+
+    /**
+     * Whether the mates of a pair are consecutive records of one file.
+     *
+     * @return true:interleaved files
+     */
+    public boolean pairedEnd_interleaved() {
+        return "interleaved".equals(this.pairedEnd);
+    }
+
     /**
      * Set text message.
      *
@@ -218,10 +422,18 @@ public class Options {
         return this.checkOutsideKmer;
     }
 
+    public boolean getCompressOutside() {
+        return this.compressOutside;
+    }
+
     public int getThreads() {
         return this.threads;
     }
 
+    public ThreadPlan getThreadPlan() {
+        return this.threadPlan;
+    }
+
     public ProgressBar getPbar() {
         return this.pbar;
     }
@@ -233,4 +445,148 @@ public class Options {
     public int getMax_chunk_array() {
         return this.max_chunk_array;
     }
+
+    // Setter / Getter (advanced options)
+
+    public void setMultiConstruct(boolean multiConstruct) {
+        this.multiConstruct = multiConstruct;
+    }
+
+    public boolean getMultiConstruct() {
+        return this.multiConstruct;
+    }
+
+    public void setRegionFile(String regionFile) {
+        this.regionFile = regionFile;
+    }
+
+    public String getRegionFile() {
+        return this.regionFile;
+    }
+
+    public void setHostReference(String hostReference) {
+        this.hostReference = hostReference;
+    }
+
+    public String getHostReference() {
+        return this.hostReference;
+    }
+
+    public void setHostKmerDrop(boolean hostKmerDrop) {
+        this.hostKmerDrop = hostKmerDrop;
+    }
+
+    public boolean getHostKmerDrop() {
+        return this.hostKmerDrop;
+    }
+
+    public void setStripedCounts(boolean stripedCounts) {
+        this.stripedCounts = stripedCounts;
+    }
+
+    public boolean getStripedCounts() {
+        return this.stripedCounts;
+    }
+
+    public void setOffHeapMemory(int offHeapMemory) {
+        this.offHeapMemory = offHeapMemory;
+    }
+
+    public int getOffHeapMemory() {
+        return this.offHeapMemory;
+    }
+
+    public void setTrimQuality(int trimQuality) {
+        this.trimQuality = trimQuality;
+    }
+
+    public int getTrimQuality() {
+        return this.trimQuality;
+    }
+
+    public void setTrimWindow(int trimWindow) {
+        this.trimWindow = trimWindow;
+    }
+
+    public int getTrimWindow() {
+        return this.trimWindow;
+    }
+
+    public void setMaskQuality(int maskQuality) {
+        this.maskQuality = maskQuality;
+    }
+
+    public int getMaskQuality() {
+        return this.maskQuality;
+    }
+
+    public void setTrimAdapter(String trimAdapter) {
+        this.trimAdapter = trimAdapter;
+    }
+
+    public String getTrimAdapter() {
+        return this.trimAdapter;
+    }
+
+    public void setPairedEnd(String pairedEnd) {
+        this.pairedEnd = pairedEnd;
+    }
+
+    public String getPairedEnd() {
+        return this.pairedEnd;
+    }
+
+    public void setDuplicateCache(int duplicateCache) {
+        this.duplicateCache = duplicateCache;
+    }
+
+    public int getDuplicateCache() {
+        return this.duplicateCache;
+    }
+
+    public void setEarlyStop(int earlyStop) {
+        this.earlyStop = earlyStop;
+    }
+
+    public int getEarlyStop() {
+        return this.earlyStop;
+    }
+
+    public void setEarlyStopTolerance(int earlyStopTolerance) {
+        this.earlyStopTolerance = earlyStopTolerance;
+    }
+
+    public int getEarlyStopTolerance() {
+        return this.earlyStopTolerance;
+    }
+
+    public void setPreview(double preview) {
+        this.preview = preview;
+    }
+
+    public double getPreview() {
+        return this.preview;
+    }
+
+    public void setPreviewSeed(long previewSeed) {
+        this.previewSeed = previewSeed;
+    }
+
+    public long getPreviewSeed() {
+        return this.previewSeed;
+    }
+
+    public void setReadLimits(long[] readLimits) {
+        this.readLimits = readLimits;
+    }
+
+    /**
+     * Get the reads consumed by the early stop.
+     *
+     * @param ifile file index
+     * @return reads, 0:all the reads
+     */
+    public long getReadLimit(int ifile) {
+        return this.readLimits == null || ifile >= this.readLimits.length ? 0L : this.readLimits[ifile];
+    }
 }
@@ -0,0 +1,308 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Offset index of the outside.txt file class.
+ * Each entry holds a vector position, the offset of its position line and the number of rows that follow it,
+ * so that a range of vector positions can be read without parsing the preceding part of the file.
+ * For the block compressed file (outside.txt.gz), the offsets are BGZF virtual offsets.
+ *
+ * @author NARO
+ */
+public class OutsideIndex {
+    //========================================================================//
+    // Public data
+    //========================================================================//
+    /**
+     * Extension of the sidecar index file.
+     */
+    public static final String EXTENSION = ".idx";
+
+    /**
+     * Extension of the block compressed outside.txt file.
+     */
+    public static final String COMPRESSED_EXTENSION = ".gz";
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    /**
+     * header tag of the index file
+     */
+    private static final String HEADER = "#Outside";
+
+    /**
+     * vector positions (ascending order)
+     */
+    private int[] position = new int[1024];
+
+    /**
+     * offsets of the position lines
+     */
+    private long[] offset = new long[1024];
+
+    /**
+     * number of rows following the position lines
+     */
+    private int[] count = new int[1024];
+
+    /**
+     * number of entries
+     */
+    private int size = 0;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Offset index of the outside.txt file class constructor.
+     */
+    public OutsideIndex() {
+    }
+
+    /**
+     * Add an entry to the index.
+     *
+     * @param pos    vector position
+     * @param offset offset of the position line
+     * @param rows   number of rows following the position line
+     */
+    public void add(int pos, long offset, int rows) {
+        if (this.size == this.position.length) {
+            int capacity = this.size * 2;
+            this.position = Arrays.copyOf(this.position, capacity);
+            this.offset = Arrays.copyOf(this.offset, capacity);
+            this.count = Arrays.copyOf(this.count, capacity);
+        }
+        this.position[this.size] = pos;
+        this.offset[this.size] = offset;
+        this.count[this.size] = rows;
+        this.size++;
+    }
+
+    /**
+     * Replace the offsets of all entries.
+     *
+     * @param converter offset converter (e.g. uncompressed offset to virtual offset)
+     */
+    public void convert_offsets(LongUnaryOperator converter) {
+        for (int i = 0; i < this.size; i++) {
+            this.offset[i] = converter.applyAsLong(this.offset[i]);
+        }
+    }
+
+    /**
+     * Write the sidecar index file.
+     *
+     * @param outsideFile outside.txt file
+     * @return true:write success, false:write failure
+     */
+    public boolean write(File outsideFile) {
+        File indexFile = new File(outsideFile.getPath() + EXTENSION);
+        try (BufferedWriter bw = Files.newBufferedWriter(indexFile.toPath())) {
+            PrintWriter pw = new PrintWriter(bw);
+            pw.println(HEADER + "\t" + outsideFile.length());
+            for (int i = 0; i < this.size; i++) {
+                pw.println(this.position[i] + "\t" + this.offset[i] + "\t" + this.count[i]);
+            }
+            pw.close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the index of the outside.txt file.
+     * If the sidecar index file does not exist or does not match the outside.txt file,
+     * the index is rebuilt by scanning the file once and saved for the next time.
+     *
+     * @param outsideFile outside.txt file
+     * @return index of the outside.txt file
+     * @throws IOException if the outside.txt file could not be read
+     */
+    public static OutsideIndex load(File outsideFile) throws IOException {
+        OutsideIndex index = read(outsideFile);
+        if (index == null) {
+            index = scan(outsideFile);
+            index.write(outsideFile);
+        }
+        return index;
+    }
+
+    /**
+     * Open the outside.txt file at the specified offset.
+     *
+     * @param outsideFile outside.txt file
+     * @param offset      offset of the line to start reading (virtual offset if compressed)
+     * @return BufferedReader positioned at the offset
+     * @throws IOException if the outside.txt file could not be read
+     */
+    public static BufferedReader open(File outsideFile, long offset) throws IOException {
+        return new BufferedReader(new InputStreamReader(open_stream(outsideFile, offset)));
+    }
+
+    /**
+     * Whether the outside.txt file is block compressed.
+     *
+     * @param outsideFile outside.txt file
+     * @return true:block compressed, false:text
+     */
+    public static boolean isCompressed(File outsideFile) {
+        return outsideFile.getName().endsWith(COMPRESSED_EXTENSION);
+    }
+
+    /**
+     * Find the first entry whose vector position is greater than or equal to the specified position.
+     *
+     * @param pos vector position
+     * @return entry index (size() if there is no such entry)
+     */
+    public int lowerBound(int pos) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.position[mid] < pos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Getter
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getPosition(int i) {
+        return this.position[i];
+    }
+
+    public long getOffset(int i) {
+        return this.offset[i];
+    }
+
+    public int getCount(int i) {
+        return this.count[i];
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Read the sidecar index file.
+     *
+     * @param outsideFile outside.txt file
+     * @return index, or null if the index file does not exist or is out of date
+     */
+    private static OutsideIndex read(File outsideFile) {
+        File indexFile = new File(outsideFile.getPath() + EXTENSION);
+        if (!indexFile.exists()) {
+            return null;
+        }
+
+        try (BufferedReader br = Files.newBufferedReader(indexFile.toPath())) {
+            String str = br.readLine();
+            if (str == null || !str.startsWith(HEADER)
+                    || Long.parseLong(str.split("\t")[1]) != outsideFile.length()) {
+                return null;
+            }
+
+            OutsideIndex index = new OutsideIndex();
+            while ((str = br.readLine()) != null) {
+                String[] data = str.split("\t");
+                index.add(Integer.parseInt(data[0]), Long.parseLong(data[1]), Integer.parseInt(data[2]));
+            }
+            return index;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Build the index by scanning the outside.txt file.
+     *
+     * @param outsideFile outside.txt file
+     * @return index
+     * @throws IOException if the outside.txt file could not be read
+     */
+    private static OutsideIndex scan(File outsideFile) throws IOException {
+        OutsideIndex index = new OutsideIndex();
+        try (InputStream is = open_stream(outsideFile, 0L)) {
+            BgzfInputStream bgzf = is instanceof BgzfInputStream ? (BgzfInputStream) is : null;
+            long offset = 0L;
+            long lineStart = 0L;
+            int rows = 0;           // rows to skip until the next position line
+            boolean header = true;
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = is.read()) != -1) {
+                offset++;
+                if (c != '\n') {
+                    if (rows == 0 && c != '\r') {
+                        line.append((char) c);
+                    }
+                    continue;
+                }
+
+                if (header) {
+                    header = false;
+                } else if (rows > 0) {
+                    rows--;
+                } else {
+                    String[] posLine = line.toString().split("\t", 3);
+                    rows = Integer.parseInt(posLine[1]);
+                    index.add(Integer.parseInt(posLine[0]), lineStart, rows);
+                }
+                line.setLength(0);
+                lineStart = Objects.isNull(bgzf) ? offset : bgzf.getVirtualOffset();
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Outside file (" + outsideFile + ") was formatted incorrectly.", e);
+        }
+        return index;
+    }
+
+    /**
+     * Open the outside.txt file at the specified offset.
+     *
+     * @param outsideFile outside.txt file
+     * @param offset      offset to start reading (virtual offset if compressed)
+     * @return InputStream positioned at the offset
+     * @throws IOException if the outside.txt file could not be read
+     */
+    private static InputStream open_stream(File outsideFile, long offset) throws IOException {
+        if (isCompressed(outsideFile)) {
+            BgzfInputStream bgzf = new BgzfInputStream(outsideFile);
+            try {
+                bgzf.seek(offset);
+            } catch (IOException e) {
+                bgzf.close();
+                throw e;
+            }
+            return bgzf;
+        }
+
+        FileChannel channel = FileChannel.open(outsideFile.toPath(), StandardOpenOption.READ);
+        channel.position(offset);
+        return new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+    }
+}
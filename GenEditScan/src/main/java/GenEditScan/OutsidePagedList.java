@@ -0,0 +1,181 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import javafx.collections.ObservableListBase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lazily paged rows of the outside.txt file class.
+ * Rows of the alignment dialog are read from the outside.txt file a page at a time when the TableView asks for them,
+ * and only the most recently used pages are kept in memory.
+ *
+ * @author NARO
+ */
+public class OutsidePagedList extends ObservableListBase<AlignmentDialogueItems> {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * number of rows in a page
+     */
+    private static final int PAGE_SIZE = 256;
+
+    /**
+     * number of pages kept in memory
+     */
+    private static final int MAX_PAGES = 32;
+
+    // pos line
+    private static final int I_POS = 0;
+    private static final int I_KMER = 2;
+
+    // seq line
+    private static final int I_LEFT = 0;
+    private static final int I_RIGHT = 1;
+    private static final int I_MUTANT = 2;
+    private static final int I_WILD_TYPE = 3;
+    private static final int I_PVAL = 6;
+    private static final int I_FDR = 7;
+    private static final int I_BONFERRONI = 8;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final File outsideFile;
+    private final OutsideIndex outsideIndex;
+    private final int first;                // first index entry of the range
+
+    /**
+     * first row of each index entry in the range (the last element is the number of rows)
+     */
+    private final int[] rowStart;
+
+    /**
+     * pages in the least recently used order
+     */
+    private final Map<Integer, List<AlignmentDialogueItems>> pages = new LinkedHashMap<>(MAX_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<AlignmentDialogueItems>> eldest) {
+            return this.size() > MAX_PAGES;
+        }
+    };
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Lazily paged rows of the outside.txt file class constructor.
+     *
+     * @param outsideFile  outside.txt file
+     * @param outsideIndex index of the outside.txt file
+     * @param first        first index entry of the range
+     * @param last         last index entry of the range (exclusive)
+     */
+    public OutsidePagedList(File outsideFile, OutsideIndex outsideIndex, int first, int last) {
+        this.outsideFile = outsideFile;
+        this.outsideIndex = outsideIndex;
+        this.first = first;
+        this.rowStart = new int[last - first + 1];
+        for (int i = first; i < last; i++) {
+            this.rowStart[i - first + 1] = this.rowStart[i - first] + outsideIndex.getCount(i);
+        }
+    }
+
+    /**
+     * Get the row.
+     *
+     * @param row row index
+     * @return alignment dialog item (null if the outside.txt file could not be read)
+     */
+    @Override
+    public AlignmentDialogueItems get(int row) {
+        if (row < 0 || row >= this.size()) {
+            throw new IndexOutOfBoundsException(row);
+        }
+        List<AlignmentDialogueItems> page = this.pages.get(row / PAGE_SIZE);
+        if (page == null) {
+            page = this.read_page(row / PAGE_SIZE);
+            if (page == null) {
+                return null;
+            }
+            this.pages.put(row / PAGE_SIZE, page);
+        }
+        return page.get(row % PAGE_SIZE);
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return number of rows
+     */
+    @Override
+    public int size() {
+        return this.rowStart[this.rowStart.length - 1];
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Read a page from the outside.txt file.
+     *
+     * @param page page index
+     * @return rows of the page, or null if the outside.txt file could not be read
+     */
+    private List<AlignmentDialogueItems> read_page(int page) {
+        int start = page * PAGE_SIZE;
+        int end = Math.min(start + PAGE_SIZE, this.size());
+
+        // Index entry containing the first row of the page
+        int entry = Arrays.binarySearch(this.rowStart, start);
+        if (entry < 0) {
+            entry = -entry - 2;
+        }
+        while (this.rowStart[entry + 1] == start) {
+            entry++;    // skip entries without rows
+        }
+
+        List<AlignmentDialogueItems> items = new ArrayList<>(end - start);
+        try (BufferedReader br = OutsideIndex.open(this.outsideFile, this.outsideIndex.getOffset(this.first + entry))) {
+            int row = this.rowStart[entry];
+            while (row < end) {
+                String[] posLine = br.readLine().split("\t");
+                int pos = Integer.parseInt(posLine[I_POS]);
+                int count = this.outsideIndex.getCount(this.first + entry);
+                for (int i = 0; i < count && row < end; i++, row++) {
+                    String str = br.readLine();
+                    if (row < start) {
+                        continue;
+                    }
+                    String[] seqLine = str.split("\t");
+                    int mutant = Integer.parseInt(seqLine[I_MUTANT]);
+                    int wildType = Integer.parseInt(seqLine[I_WILD_TYPE]);
+                    String sequence = seqLine[I_LEFT] + "-" + posLine[I_KMER] + "-" + seqLine[I_RIGHT];
+                    float pval = Float.parseFloat(seqLine[I_PVAL]);
+                    float fdr = Float.parseFloat(seqLine[I_FDR]);
+                    float bonferroni = Float.parseFloat(seqLine[I_BONFERRONI]);
+
+                    items.add(new AlignmentDialogueItems(pos, i + 1, sequence, mutant, wildType,
+                            pval, fdr, bonferroni));
+                }
+                entry++;
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        return items;
+    }
+}
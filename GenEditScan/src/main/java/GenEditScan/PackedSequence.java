@@ -0,0 +1,227 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Packed sequence class.
+ * A, C, G and T are stored in 2 bits (32 bases per long), and the other letters (N, IUPAC codes, etc.)
+ * are kept in a sorted exception list. Lower case letters are stored in upper case.
+ * The sequence is treated as circular when k-mers are taken from it. The k-mers are cut from the letters
+ * decoded once for the whole sequence, and their complementary sequences from the complementary letters in
+ * reverse order, so a k-mer costs one copy of its letters.
+ *
+ * @author NARO
+ */
+public class PackedSequence {
+    //========================================================================//
+    // Public class
+    //========================================================================//
+
+    /**
+     * Visitor of the k-mers.
+     */
+    public interface MerVisitor {
+        /**
+         * Visit the k-mer of a position.
+         *
+         * @param pos    first position of the k-mer
+         * @param mer    k-mer
+         * @param revMer complementary sequence of the k-mer
+         */
+        void visit(int pos, String mer, String revMer);
+    }
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * A:0, C:1, G:2, T:3, others:-1
+     */
+    private static final byte[] CODE = new byte[256];
+
+    /**
+     * letters of the codes, and of the complementary codes
+     */
+    private static final byte[] BASE = {'A', 'C', 'G', 'T'};
+    private static final byte[] COMPLEMENT = {'T', 'G', 'C', 'A'};
+
+    static {
+        Arrays.fill(CODE, (byte) -1);
+        for (int i = 0; i < BASE.length; i++) {
+            CODE[BASE[i]] = (byte) i;
+        }
+    }
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private long[] bits = new long[16];
+    private int length = 0;
+
+    /**
+     * positions and letters of the bases other than A, C, G and T
+     */
+    private int[] exceptionPos = new int[0];
+    private byte[] exceptionBase = new byte[0];
+    private int exceptions = 0;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Append a letter.
+     *
+     * @param c letter (ASCII)
+     */
+    public void append(byte c) {
+        if (c >= 'a' && c <= 'z') {
+            c -= 'a' - 'A';
+        }
+        if (this.length == this.bits.length * 32) {
+            this.bits = Arrays.copyOf(this.bits, this.bits.length * 2);
+        }
+        int code = CODE[c & 0xff];
+        if (code < 0) {
+            if (this.exceptions == this.exceptionPos.length) {
+                int capacity = Math.max(16, this.exceptions * 2);
+                this.exceptionPos = Arrays.copyOf(this.exceptionPos, capacity);
+                this.exceptionBase = Arrays.copyOf(this.exceptionBase, capacity);
+            }
+            this.exceptionPos[this.exceptions] = this.length;
+            this.exceptionBase[this.exceptions++] = c;
+            code = 0;
+        }
+        this.bits[this.length >>> 5] |= (long) code << ((this.length & 31) << 1);
+        this.length++;
+    }
+
+    /**
+     * Length of the sequence.
+     *
+     * @return number of bases
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Get the letter at the position.
+     *
+     * @param pos position (0 origin)
+     * @return letter
+     */
+    public byte charAt(int pos) {
+        if (this.exceptions > 0) {
+            int i = Arrays.binarySearch(this.exceptionPos, 0, this.exceptions, pos);
+            if (i >= 0) {
+                return this.exceptionBase[i];
+            }
+        }
+        return BASE[this.code(pos)];
+    }
+
+    /**
+     * Visit the k-mers of the positions and their complementary sequences (circular).
+     * The complementary sequence of a k-mer with a base other than A, C, G or T is built base by base,
+     * because those bases are left out (see complementaryMer).
+     *
+     * @param kmer      k-mer
+     * @param positions positions to be visited (null:every position)
+     * @param visitor   visitor
+     */
+    public void forEachMer(int kmer, BitSet positions, MerVisitor visitor) {
+        int size = this.length + kmer - 1;
+        byte[] bases = new byte[size];
+        byte[] complement = new byte[size];     // complementary letters in reverse order
+        for (int i = 0; i < size; i++) {
+            int pos = i % this.length;
+            bases[i] = this.charAt(pos);
+            complement[size - 1 - i] = COMPLEMENT[this.code(pos)];
+        }
+
+        int others = 0;                         // bases other than A, C, G and T in the window
+        for (int i = 0; i < kmer - 1; i++) {
+            others += CODE[bases[i] & 0xff] < 0 ? 1 : 0;
+        }
+        for (int i = 0; i < this.length; i++) {
+            others += CODE[bases[i + kmer - 1] & 0xff] < 0 ? 1 : 0;
+            if (positions == null || positions.get(i)) {
+                String mer = new String(bases, i, kmer, StandardCharsets.ISO_8859_1);
+                String revMer = others > 0 ? this.complementaryMer(i, kmer)
+                        : new String(complement, size - i - kmer, kmer, StandardCharsets.ISO_8859_1);
+                visitor.visit(i, mer, revMer);
+            }
+            others -= CODE[bases[i] & 0xff] < 0 ? 1 : 0;
+        }
+    }
+
+    /**
+     * Get the sequence followed by its first bases (circular).
+     *
+     * @param size number of letters
+     * @return sequence
+     */
+    public String toString(int size) {
+        byte[] sequence = new byte[size];
+        for (int i = 0; i < size; i++) {
+            sequence[i] = this.charAt(i % this.length);
+        }
+        return new String(sequence, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return this.toString(this.length);
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Get the complementary sequence of the k-mer starting at the position (circular).
+     * The bases other than A, C, G and T are left out, as in CommonTools.complementaryMer.
+     *
+     * @param start first position
+     * @param kmer  k-mer
+     * @return complementary sequence
+     */
+    private String complementaryMer(int start, int kmer) {
+        byte[] mer = new byte[kmer];
+        int n = 0;
+        for (int i = kmer - 1; i >= 0; i--) {
+            int pos = (start + i) % this.length;
+            if (!this.isException(pos)) {
+                mer[n++] = COMPLEMENT[this.code(pos)];
+            }
+        }
+        return new String(mer, 0, n, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Get the 2-bit code at the position.
+     *
+     * @param pos position
+     * @return code (0 for the bases other than A, C, G and T)
+     */
+    private int code(int pos) {
+        return (int) (this.bits[pos >>> 5] >>> ((pos & 31) << 1)) & 3;
+    }
+
+    /**
+     * Whether the position is not A, C, G or T.
+     *
+     * @param pos position
+     * @return true:exception, false:A, C, G or T
+     */
+    private boolean isException(int pos) {
+        return this.exceptions > 0 && Arrays.binarySearch(this.exceptionPos, 0, this.exceptions, pos) >= 0;
+    }
+}
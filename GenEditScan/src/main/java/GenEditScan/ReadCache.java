@@ -0,0 +1,254 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Read cache class (k-mer index slots found in the recent reads of a scan worker).
+ * Amplicon and PCR-heavy libraries hold the same read many times, so the slots found in a read are kept with
+ * the read, and a repeated read adds the kept slots instead of being scanned again. The reads are looked up
+ * by a 64-bit hash and compared byte by byte, so a hash collision never adds wrong slots.
+ * The entries are replaced by the CLOCK algorithm (an approximation of LRU): a hit sets the reference bit of
+ * the entry, and the hand clears the bits and evicts the first entry without one, until the new read fits
+ * in the memory budget of the cache.
+ *
+ * @author NARO
+ */
+public class ReadCache {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * bytes of an entry besides the read and the slots (arrays, index, key and counters)
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * expected bytes of an entry, to size the index
+     */
+    private static final int ENTRY_ESTIMATE = 256;
+
+    private static final int MAX_ENTRIES = 1 << 22;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final long budget;              // bytes of the entries
+    private final long[] keys;              // hash of the read of each entry
+    private final byte[][] reads;           // null:empty entry
+    private final int[][] slots;            // k-mer index slots found in the read
+    private final int[] skipped;            // windows skipped in the read
+    private final boolean[] referenced;     // reference bits of CLOCK
+    private final int[] index;              // open addressing index of the entries (entry + 1, 0:empty)
+    private final int mask;
+    private int hand = 0;
+    private long used = 0L;
+    private long lookups = 0L;
+    private long hits = 0L;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Read cache class constructor.
+     *
+     * @param budget memory budget of the cache in bytes
+     */
+    public ReadCache(long budget) {
+        this.budget = budget;
+        int entries = (int) Math.max(16, Math.min(MAX_ENTRIES, budget / ENTRY_ESTIMATE));
+        this.keys = new long[entries];
+        this.reads = new byte[entries][];
+        this.slots = new int[entries][];
+        this.skipped = new int[entries];
+        this.referenced = new boolean[entries];
+        int size = Integer.highestOneBit(entries - 1) << 2;
+        this.index = new int[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Hash of a read.
+     *
+     * @param seq    buffer
+     * @param offset first base
+     * @param length number of bases
+     * @return hash
+     */
+    public static long hash(byte[] seq, int offset, int length) {
+        return hash(seq, offset, length, 0L);
+    }
+
+    /**
+     * Seeded hash of a read (or of any line of a record).
+     *
+     * @param seq    buffer
+     * @param offset first byte
+     * @param length number of bytes
+     * @param seed   seed (0:the hash of the cache)
+     * @return hash
+     */
+    public static long hash(byte[] seq, int offset, int length, long seed) {
+        long h = (length ^ seed) * 0x9e3779b97f4a7c15L;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            h = Long.rotateLeft(h ^ (long) LONGS.get(seq, offset + i), 27) * 0x9e3779b97f4a7c15L;
+        }
+        for (; i < length; i++) {
+            h = Long.rotateLeft(h ^ seq[offset + i], 7) * 0x9e3779b97f4a7c15L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Look up a read.
+     *
+     * @param key    hash of the read
+     * @param seq    buffer
+     * @param offset first base
+     * @param length number of bases
+     * @return entry, -1 if the read is not in the cache
+     */
+    public int find(long key, byte[] seq, int offset, int length) {
+        this.lookups++;
+        for (int pos = (int) key & this.mask; this.index[pos] != 0; pos = (pos + 1) & this.mask) {
+            int entry = this.index[pos] - 1;
+            if (this.keys[entry] == key
+                    && Arrays.equals(this.reads[entry], 0, this.reads[entry].length, seq, offset, offset + length)) {
+                this.referenced[entry] = true;
+                this.hits++;
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a read (the read must not be in the cache).
+     *
+     * @param key     hash of the read
+     * @param seq     buffer
+     * @param offset  first base
+     * @param length  number of bases
+     * @param found   k-mer index slots found in the read
+     * @param nFound  number of slots
+     * @param skipped windows skipped in the read
+     */
+    public void add(long key, byte[] seq, int offset, int length, int[] found, int nFound, int skipped) {
+        long size = ENTRY_OVERHEAD + length + 4L * nFound;
+        if (size > this.budget / 4) {
+            return;
+        }
+
+        // CLOCK: clear the reference bits until an entry without one is evicted, and the read fits
+        while (true) {
+            if (this.reads[this.hand] == null) {
+                if (this.used + size <= this.budget) {
+                    break;
+                }
+            } else if (this.referenced[this.hand]) {
+                this.referenced[this.hand] = false;
+            } else {
+                this.remove(this.hand);
+                continue;
+            }
+            this.hand = (this.hand + 1) % this.reads.length;
+        }
+
+        int entry = this.hand;
+        this.keys[entry] = key;
+        this.reads[entry] = Arrays.copyOfRange(seq, offset, offset + length);
+        this.slots[entry] = Arrays.copyOf(found, nFound);
+        this.skipped[entry] = skipped;
+        this.referenced[entry] = false;
+        this.used += size;
+        int pos = (int) key & this.mask;
+        while (this.index[pos] != 0) {
+            pos = (pos + 1) & this.mask;
+        }
+        this.index[pos] = entry + 1;
+        this.hand = (this.hand + 1) % this.reads.length;
+    }
+
+    /**
+     * Get the k-mer index slots found in the read of an entry.
+     *
+     * @param entry entry
+     * @return slots
+     */
+    public int[] getSlots(int entry) {
+        return this.slots[entry];
+    }
+
+    /**
+     * Get the windows skipped in the read of an entry.
+     *
+     * @param entry entry
+     * @return windows
+     */
+    public int getSkipped(int entry) {
+        return this.skipped[entry];
+    }
+
+    // Getter
+
+    public long getLookups() {
+        return this.lookups;
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Evict an entry (the entries after it in the index are shifted back, so no tombstone is left).
+     *
+     * @param entry entry
+     */
+    private void remove(int entry) {
+        int pos = (int) this.keys[entry] & this.mask;
+        while (this.index[pos] != entry + 1) {
+            pos = (pos + 1) & this.mask;
+        }
+        this.index[pos] = 0;
+        for (int next = (pos + 1) & this.mask; this.index[next] != 0; next = (next + 1) & this.mask) {
+            int ideal = (int) this.keys[this.index[next] - 1] & this.mask;
+            if (((next - ideal) & this.mask) >= ((next - pos) & this.mask)) {
+                this.index[pos] = this.index[next];
+                this.index[next] = 0;
+                pos = next;
+            }
+        }
+        this.used -= ENTRY_OVERHEAD + this.reads[entry].length + 4L * this.slots[entry].length;
+        this.reads[entry] = null;
+        this.slots[entry] = null;
+    }
+
+    /**
+     * Mix the bits of the hash (MurmurHash3 finalizer).
+     *
+     * @param key key
+     * @return hash
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read trimmer class (quality trimming, adapter clipping and masking of a record in the batch buffer).
+ * The read is cut at the first window of TRIM_WINDOW bases whose mean Phred quality is below TRIM_QUALITY,
+ * and at the first adapter k-mer (or at an adapter prefix at the end of the read). The bases kept whose quality
+ * is below MASK_QUALITY are overwritten with N, so that their windows are skipped by the scan.
+ * The record is only shortened or masked in place: no line is copied and no String is created.
+ *
+ * @author NARO
+ */
+public class ReadTrimmer {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    private static final int PHRED_OFFSET = 33;
+
+    /**
+     * length of the adapter k-mers
+     */
+    private static final int ADAPTER_SEED = 10;
+
+    /**
+     * shortest adapter prefix clipped at the end of a read
+     */
+    private static final int MIN_OVERLAP = 5;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final int trimQuality;          // 0:no quality trimming
+    private final int window;
+    private final int maskQuality;          // 0:no masking
+    private final byte[] adapter;           // null:no adapter clipping
+    private final int seed;                 // length of the adapter k-mers
+    private final int[] seedKeys;           // open addressing table of the adapter k-mers (-1:empty)
+    private final int[] seedOffsets;        // first position of the k-mer in the adapter
+    private final LongAdder trimmed = new LongAdder();
+    private final LongAdder masked = new LongAdder();
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Create the read trimmer of the options.
+     *
+     * @param options Execution options class
+     * @return read trimmer, null if neither trimming nor masking is set
+     */
+    public static ReadTrimmer create(Options options) {
+        String adapter = options.getTrimAdapter();
+        boolean clip = adapter != null && !adapter.isEmpty();
+        if (options.getTrimQuality() <= 0 && options.getMaskQuality() <= 0 && !clip) {
+            return null;
+        }
+        return new ReadTrimmer(options.getTrimQuality(), options.getTrimWindow(), options.getMaskQuality(),
+                clip ? adapter.toUpperCase() : null);
+    }
+
+    /**
+     * Read trimmer class constructor.
+     *
+     * @param trimQuality mean quality of the trimming window (0:no quality trimming)
+     * @param window      bases of the trimming window
+     * @param maskQuality quality below which a base is masked (0:no masking)
+     * @param adapter     adapter sequence (null:no adapter clipping)
+     */
+    public ReadTrimmer(int trimQuality, int window, int maskQuality, String adapter) {
+        this.trimQuality = trimQuality;
+        this.window = Math.max(1, window);
+        this.maskQuality = maskQuality;
+        this.adapter = adapter == null ? null : adapter.getBytes(StandardCharsets.ISO_8859_1);
+        this.seed = adapter == null ? 0 : Math.min(ADAPTER_SEED, adapter.length());
+
+        int entries = 16;
+        while (this.adapter != null && entries < 4 * this.adapter.length) {
+            entries <<= 1;
+        }
+        this.seedKeys = new int[this.adapter == null ? 0 : entries];
+        this.seedOffsets = new int[this.seedKeys.length];
+        Arrays.fill(this.seedKeys, -1);
+        for (int j = 0; this.adapter != null && j + this.seed <= this.adapter.length; j++) {
+            int key = encode(this.adapter, j, this.seed);
+            if (key >= 0) {
+                int pos = this.find_seed(key);
+                if (this.seedKeys[pos] < 0) {
+                    this.seedKeys[pos] = key;
+                    this.seedOffsets[pos] = j;
+                }
+            }
+        }
+    }
+
+    /**
+     * Trim and mask a record.
+     *
+     * @param data          buffer
+     * @param seq           first base
+     * @param length        number of bases
+     * @param quality       first quality
+     * @param qualityLength number of qualities
+     * @return number of bases kept
+     */
+    public int trim(byte[] data, int seq, int length, int quality, int qualityLength) {
+        int scored = Math.min(length, qualityLength);
+        int kept = length;
+
+        // Sliding window of the mean quality
+        if (this.trimQuality > 0 && scored > 0) {
+            int w = Math.min(this.window, scored);
+            int limit = this.trimQuality * w;
+            int sum = 0;
+            for (int i = 0; i < w; i++) {
+                sum += data[quality + i] - PHRED_OFFSET;
+            }
+            for (int start = 0; ; start++) {
+                if (sum < limit) {
+                    kept = start;
+                    break;
+                }
+                if (start + w >= scored) {
+                    break;
+                }
+                sum += data[quality + start + w] - data[quality + start];
+            }
+        }
+
+        if (this.adapter != null) {
+            kept = this.clip_adapter(data, seq, kept);
+        }
+
+        if (this.maskQuality > 0) {
+            int n = 0;
+            for (int i = 0; i < Math.min(kept, scored); i++) {
+                if (data[quality + i] - PHRED_OFFSET < this.maskQuality) {
+                    data[seq + i] = 'N';
+                    n++;
+                }
+            }
+            this.masked.add(n);
+        }
+
+        this.trimmed.add(length - kept);
+        return kept;
+    }
+
+    // Getter
+
+    public long getTrimmed() {
+        return this.trimmed.sum();
+    }
+
+    public long getMasked() {
+        return this.masked.sum();
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Clip the read at the adapter.
+     *
+     * @param data   buffer
+     * @param seq    first base
+     * @param length number of bases
+     * @return number of bases before the adapter
+     */
+    private int clip_adapter(byte[] data, int seq, int length) {
+        int mask = (1 << (2 * this.seed)) - 1;
+        int key = 0;
+        int valid = 0;      // A, C, G or T bases at the end of the k-mer
+        for (int i = 0; i < length; i++) {
+            int code = code(data[seq + i]);
+            if (code < 0) {
+                valid = 0;
+                continue;
+            }
+            key = ((key << 2) | code) & mask;
+            if (++valid >= this.seed) {
+                int pos = this.find_seed(key);
+                if (this.seedKeys[pos] == key) {
+                    return Math.max(0, i - this.seed + 1 - this.seedOffsets[pos]);
+                }
+            }
+        }
+
+        // Adapter prefix shorter than a k-mer at the end of the read
+        for (int overlap = Math.min(this.seed - 1, length); overlap >= MIN_OVERLAP; overlap--) {
+            if (Arrays.equals(data, seq + length - overlap, seq + length, this.adapter, 0, overlap)) {
+                return length - overlap;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Find the entry of the adapter k-mer.
+     *
+     * @param key k-mer
+     * @return entry of the k-mer, or the empty entry where it would be
+     */
+    private int find_seed(int key) {
+        int mask = this.seedKeys.length - 1;
+        int pos = (key * 0x9e3779b9 >>> 16) & mask;
+        while (this.seedKeys[pos] >= 0 && this.seedKeys[pos] != key) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    /**
+     * Pack the bases into 2 bits each.
+     *
+     * @param bases  bases
+     * @param from   first base
+     * @param length number of bases
+     * @return packed bases, -1 if a base is not A, C, G or T
+     */
+    private static int encode(byte[] bases, int from, int length) {
+        int key = 0;
+        for (int i = from; i < from + length; i++) {
+            int code = code(bases[i]);
+            if (code < 0) {
+                return -1;
+            }
+            key = (key << 2) | code;
+        }
+        return key;
+    }
+
+    /**
+     * 2-bit code of a base.
+     *
+     * @param base base
+     * @return code, -1 if the base is not A, C, G or T
+     */
+    private static int code(byte base) {
+        return switch (base) {
+            case 'A', 'a' -> 0;
+            case 'C', 'c' -> 1;
+            case 'G', 'g' -> 2;
+            case 'T', 't' -> 3;
+            default -> -1;
+        };
+    }
+}
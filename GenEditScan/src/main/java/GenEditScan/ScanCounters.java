@@ -0,0 +1,172 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+/**
+ * Scan counters class (what the scan of each fastq file left out, for the schedule report).
+ * The files are indexed as the mer counters: mutant files, then wild type files.
+ * The read pairs of the paired-end input are counted to the R1 file (or the interleaved file).
+ * The duplicate read cache (see ReadCache) and the rounds of the early stop (see EarlyStop) are counted
+ * in the k-mer match phase only.
+ *
+ * @author NARO
+ */
+public class ScanCounters {
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final long[] skippedWindows;    // windows with a base other than A, C, G and T
+    private final long[] trimmedBases;      // bases trimmed by quality or adapter (see ReadTrimmer)
+    private final long[] maskedBases;       // low quality bases masked to N
+    private final long[] pairs;             // read pairs
+    private final long[] pairHits;          // read pairs with a hit in either mate
+    private final long[] pairBoth;          // read pairs with hits in both mates
+    private final long[] cacheLookups;      // reads looked up in the duplicate read cache
+    private final long[] cacheHits;         // repeated reads added from the cache
+    private final long[] savedNanos;        // estimated scan time saved by the cache
+    private final long[] reads;             // reads consumed
+    private int rounds = 0;                 // rounds of the early stop
+    private boolean stopped = false;        // true:stopped before the end of the files
+    private int calls = 0;                  // significant positions of the last interim test
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Scan counters class constructor.
+     *
+     * @param files number of fastq files
+     */
+    public ScanCounters(int files) {
+        this.skippedWindows = new long[files];
+        this.trimmedBases = new long[files];
+        this.maskedBases = new long[files];
+        this.pairs = new long[files];
+        this.pairHits = new long[files];
+        this.pairBoth = new long[files];
+        this.cacheLookups = new long[files];
+        this.cacheHits = new long[files];
+        this.savedNanos = new long[files];
+        this.reads = new long[files];
+    }
+
+    /**
+     * Set the counters of a file.
+     *
+     * @param ifile   file index
+     * @param skipped skipped windows
+     * @param reader  fastq reader of the file
+     * @param mate    0:fastq file, 1:R2 file of the reader
+     */
+    public void set(int ifile, long skipped, FastqReader reader, int mate) {
+        this.skippedWindows[ifile] = skipped;
+        this.trimmedBases[ifile] = reader.getTrimmedBases(mate);
+        this.maskedBases[ifile] = reader.getMaskedBases(mate);
+    }
+
+    /**
+     * Set the read pairs of a file.
+     *
+     * @param ifile  file index
+     * @param reader fastq reader of the file
+     */
+    public void setPairs(int ifile, FastqReader reader) {
+        this.pairs[ifile] = reader.getPairs();
+        this.pairHits[ifile] = reader.getPairHits();
+        this.pairBoth[ifile] = reader.getPairBoth();
+    }
+
+    /**
+     * Set the duplicate read cache counters of a file.
+     *
+     * @param ifile      file index
+     * @param lookups    reads looked up
+     * @param hits       reads added from the cache
+     * @param savedNanos estimated scan time saved
+     */
+    public void setCache(int ifile, long lookups, long hits, long savedNanos) {
+        this.cacheLookups[ifile] = lookups;
+        this.cacheHits[ifile] = hits;
+        this.savedNanos[ifile] = savedNanos;
+    }
+
+    /**
+     * Set the reads consumed from a file.
+     *
+     * @param ifile file index
+     * @param reads reads (records of the file)
+     */
+    public void setReads(int ifile, long reads) {
+        this.reads[ifile] = reads;
+    }
+
+    /**
+     * Set the result of the early stop.
+     *
+     * @param rounds  rounds read
+     * @param stopped true:stopped before the end of the files
+     * @param calls   significant positions of the last interim test
+     */
+    public void setEarlyStop(int rounds, boolean stopped, int calls) {
+        this.rounds = rounds;
+        this.stopped = stopped;
+        this.calls = calls;
+    }
+
+    // Getter
+
+    public long getSkippedWindows(int ifile) {
+        return ifile < this.skippedWindows.length ? this.skippedWindows[ifile] : 0L;
+    }
+
+    public long getTrimmedBases(int ifile) {
+        return ifile < this.trimmedBases.length ? this.trimmedBases[ifile] : 0L;
+    }
+
+    public long getMaskedBases(int ifile) {
+        return ifile < this.maskedBases.length ? this.maskedBases[ifile] : 0L;
+    }
+
+    public long getPairs(int ifile) {
+        return ifile < this.pairs.length ? this.pairs[ifile] : 0L;
+    }
+
+    public long getPairHits(int ifile) {
+        return ifile < this.pairHits.length ? this.pairHits[ifile] : 0L;
+    }
+
+    public long getPairBoth(int ifile) {
+        return ifile < this.pairBoth.length ? this.pairBoth[ifile] : 0L;
+    }
+
+    public long getCacheLookups(int ifile) {
+        return ifile < this.cacheLookups.length ? this.cacheLookups[ifile] : 0L;
+    }
+
+    public long getCacheHits(int ifile) {
+        return ifile < this.cacheHits.length ? this.cacheHits[ifile] : 0L;
+    }
+
+    public long getSavedNanos(int ifile) {
+        return ifile < this.savedNanos.length ? this.savedNanos[ifile] : 0L;
+    }
+
+    public long getReads(int ifile) {
+        return ifile < this.reads.length ? this.reads[ifile] : 0L;
+    }
+
+    public int getRounds() {
+        return this.rounds;
+    }
+
+    public boolean getStopped() {
+        return this.stopped;
+    }
+
+    public int getCalls() {
+        return this.calls;
+    }
+}
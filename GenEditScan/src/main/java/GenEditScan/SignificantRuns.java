@@ -0,0 +1,174 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.util.Arrays;
+
+/**
+ * Significant runs class (runs of consecutive positions at or above the threshold of a test value).
+ * The runs are found by descending the coverage pyramid (see CoveragePyramid) from the top, skipping every bin
+ * below the threshold, so a query visits the significant positions only and not the whole vector.
+ * A run is cut at a gap between the positions (see VectorSequence). The runs are in the order of the positions,
+ * so the run at a position is found by a binary search.
+ *
+ * @author NARO
+ */
+public class SignificantRuns {
+    //========================================================================//
+    // Public parameters
+    //========================================================================//
+    /**
+     * test values (the y-axis title identification index of the graph)
+     */
+    public static final int FDR = 0;
+    public static final int BONFERRONI = 1;
+    public static final int PVALUE = 2;
+    public static final int GVALUE = 3;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final int metric;
+    private final double threshold;
+    private final int[] position;
+    private int[] starts = new int[16];     // first position index of each run
+    private int[] ends = new int[16];       // end position index of each run
+    private int size = 0;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Significant runs class constructor.
+     *
+     * @param pyramid   coverage pyramid of the statistics.txt file
+     * @param position  positions
+     * @param metric    test value (FDR, BONFERRONI, PVALUE or GVALUE)
+     * @param threshold threshold of the test value (-log10 of the FDR, the Bonferroni value and the p-value)
+     */
+    public SignificantRuns(CoveragePyramid pyramid, int[] position, int metric, double threshold) {
+        this.metric = metric;
+        this.threshold = threshold;
+        this.position = position;
+        int top = pyramid.levels() - 1;
+        if (position.length > 0) {
+            this.search(pyramid, top, 0);
+        }
+        this.starts = Arrays.copyOf(this.starts, this.size);
+        this.ends = Arrays.copyOf(this.ends, this.size);
+    }
+
+    /**
+     * Find the last run overlapping a range of positions.
+     *
+     * @param from first position index
+     * @param to   end position index
+     * @return run index, -1 if none
+     */
+    public int find(int from, int to) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.starts[mid] < to) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low > 0 && this.ends[low - 1] > from ? low - 1 : -1;
+    }
+
+    /**
+     * Whether the runs answer a query.
+     *
+     * @param metric    test value
+     * @param threshold threshold of the test value
+     * @return true:same test value and threshold
+     */
+    public boolean matches(int metric, double threshold) {
+        return this.metric == metric && Double.compare(this.threshold, threshold) == 0;
+    }
+
+    // Getter
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getStart(int run) {
+        return this.starts[run];
+    }
+
+    public int getEnd(int run) {
+        return this.ends[run];
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Collect the significant positions of a bin, from left to right.
+     *
+     * @param pyramid coverage pyramid
+     * @param level   level of the bin
+     * @param bin     bin index
+     */
+    private void search(CoveragePyramid pyramid, int level, int bin) {
+        if (this.value(pyramid, level, bin) < this.threshold) {
+            return;
+        }
+        if (level == 0) {
+            this.add(bin);
+            return;
+        }
+        this.search(pyramid, level - 1, 2 * bin);
+        if (2 * bin + 1 < pyramid.getMutant(level - 1).length) {
+            this.search(pyramid, level - 1, 2 * bin + 1);
+        }
+    }
+
+    /**
+     * Test value of a bin (the highest value of its positions).
+     *
+     * @param pyramid coverage pyramid
+     * @param level   level of the bin
+     * @param bin     bin index
+     * @return test value
+     */
+    private double value(CoveragePyramid pyramid, int level, int bin) {
+        switch (this.metric) {
+            case FDR:
+                return -Math.log10(pyramid.getFdr(level)[bin]);
+            case BONFERRONI:
+                return -Math.log10(pyramid.getBonferroni(level)[bin]);
+            case PVALUE:
+                return -Math.log10(pyramid.getPvalue(level)[bin]);
+            default:
+                return pyramid.getGvalue(level)[bin];
+        }
+    }
+
+    /**
+     * Add a significant position to the last run, or start a new run.
+     *
+     * @param index position index
+     */
+    private void add(int index) {
+        if (this.size > 0 && this.ends[this.size - 1] == index
+                && this.position[index] == this.position[index - 1] + 1) {
+            this.ends[this.size - 1]++;
+            return;
+        }
+        if (this.size == this.starts.length) {
+            this.starts = Arrays.copyOf(this.starts, this.size * 2);
+            this.ends = Arrays.copyOf(this.ends, this.size * 2);
+        }
+        this.starts[this.size] = index;
+        this.ends[this.size++] = index + 1;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Slot counts class (counts of the k-mer index slots of one sample scanned by several workers).
+ * By default each worker counts into its own int array without any synchronization, and the arrays are summed
+ * by a parallel reduction over slot blocks at the end of the sample. The striped table shares a few atomic arrays
+ * among the workers instead (memory of STRIPES arrays whatever the number of workers), for memory-constrained runs
+ * with a large k-mer index.
+ * The per-worker arrays take 4 bytes per slot and worker, and the striped table 4 bytes per slot and stripe, so
+ * the striped table saves memory only with more than STRIPES workers per sample. It pays with an atomic increment
+ * per hit, 3 to 5 times the time of a plain increment on one core, and more when workers on other cores increment
+ * the same stripe (see SlotCountsBenchmark).
+ *
+ * @author NARO
+ */
+public class SlotCounts {
+    //========================================================================//
+    // Public class
+    //========================================================================//
+
+    /**
+     * Counter of a worker.
+     */
+    public interface Counter {
+        /**
+         * Count the slot.
+         *
+         * @param slot k-mer index slot
+         */
+        void add(int slot);
+    }
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * number of atomic arrays of the striped table
+     */
+    private static final int STRIPES = 4;
+
+    /**
+     * slots per block of the reduction
+     */
+    private static final int BLOCK_SIZE = 1 << 14;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final int slots;
+    private final boolean striped;
+    private final List<int[]> locals = new ArrayList<>();
+    private final AtomicIntegerArray[] stripes;
+    private int workers = 0;
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Slot counts class constructor.
+     *
+     * @param slots      number of slots
+     * @param striped    true:shared striped table, false:per-worker arrays
+     * @param maxWorkers maximum number of workers
+     */
+    public SlotCounts(int slots, boolean striped, int maxWorkers) {
+        this.slots = slots;
+        this.striped = striped;
+        this.stripes = new AtomicIntegerArray[striped ? Math.max(1, Math.min(maxWorkers, STRIPES)) : 0];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new AtomicIntegerArray(slots);
+        }
+    }
+
+    /**
+     * Create the counter of a new worker.
+     *
+     * @return counter
+     */
+    public synchronized Counter counter() {
+        if (this.striped) {
+            AtomicIntegerArray stripe = this.stripes[this.workers++ % this.stripes.length];
+            return stripe::incrementAndGet;
+        }
+        int[] counts = new int[this.slots];
+        this.locals.add(counts);
+        this.workers++;
+        return slot -> counts[slot]++;
+    }
+
+    /**
+     * Sum the counts of the workers (after all the workers have finished).
+     *
+     * @return counts of the slots
+     */
+    public synchronized int[] reduce() {
+        int[] total = new int[this.slots];
+        int blocks = (this.slots + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            int from = block * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, this.slots);
+            for (int[] counts : this.locals) {
+                for (int slot = from; slot < to; slot++) {
+                    total[slot] += counts[slot];
+                }
+            }
+            for (AtomicIntegerArray stripe : this.stripes) {
+                for (int slot = from; slot < to; slot++) {
+                    total[slot] += stripe.get(slot);
+                }
+            }
+        });
+        return total;
+    }
+}
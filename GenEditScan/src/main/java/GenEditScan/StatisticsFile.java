@@ -8,10 +8,9 @@ import javafx.scene.Node;
 import javafx.scene.control.TextField;
 import javafx.util.Pair;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
@@ -48,11 +47,27 @@ public class StatisticsFile {
      */
     String vectorArray;
 
+    /**
+     * name of the vector construct (multi-construct screening), added to the output file names
+     */
+    String construct;
+
+    /**
+     * name of the vector record (first word of its fasta header), written in the header of the statistics.txt file
+     * of a multi-construct or region run
+     */
+    String vectorName = "";
+
     /**
      * position and k-mer complementary pair on vector
      */
     Map<Integer, Pair<String, String>> vectorPosPair;
 
+    /**
+     * vector position of each tested position (the index of the position frequencies and the test results)
+     */
+    int[] positions = new int[0];
+
     /**
      * position frequency of mutant
      */
@@ -84,6 +99,7 @@ public class StatisticsFile {
 
     /**
      * Set mer total count.
+     * In a preview run the totals are the windows of the sampled reads only, so they scale with the counts.
      *
      * @param mutant_mer_count  count of the mutant total mer
      * @param wildType_mer_cont count of the wild type total mer
@@ -99,27 +115,26 @@ public class StatisticsFile {
      * @return statistics.txt file
      */
     public TextField create_statisticsFile(Node node) {
-        String statisticsFile = this.options.getOutDirectory() + File.separator + this.options.getOut_prefix() + ".statistics.txt";
+        String statisticsFile = this.out_prefix() + ".statistics.txt";
 
-        try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(statisticsFile))) {
-            PrintWriter pw = new PrintWriter(bw);
-            pw.println("#K-mer\t" + this.options.getKmer());
-            pw.println("#Pos\tSeq\tMutant\tWildType\tGval\tPval\tFDR\tBonferroni");
+        try (TextFileWriter tw = new TextFileWriter(Files.newOutputStream(Paths.get(statisticsFile)))) {
+            tw.print("#K-mer\t").print(this.options.getKmer())
+                    .print(this.vector_header()).print(this.preview_header()).println();
+            tw.print("#Pos\tSeq\tMutant\tWildType\tGval\tPval\tFDR\tBonferroni").println();
 
             // Calculate G-value for k-mer match analysis.
             this.gtest.sequence_match(this.mutantPosFreq, this.wildTypePosFreq);
 
             //========== Output ==========//
             for (int i = 0; i < this.mutantPosFreq.size(); i++) {
-                pw.print((i + 1) + "\t" + this.vectorArray.charAt(i));
-                pw.print("\t" + this.mutantPosFreq.get(i));
-                pw.print("\t" + this.wildTypePosFreq.get(i));
-                pw.print("\t" + this.gtest.getGval().get(i).floatValue());
-                pw.print("\t" + this.gtest.getPval().get(i).floatValue());
-                pw.print("\t" + this.gtest.getFdr().get(i).floatValue());
-                pw.println("\t" + this.gtest.getBon().get(i).floatValue());
+                tw.print(this.positions[i] + 1).tab().print(this.vectorArray.charAt(this.positions[i]));
+                tw.tab().print(this.mutantPosFreq.get(i));
+                tw.tab().print(this.wildTypePosFreq.get(i));
+                tw.tab().print(this.gtest.getGval().get(i).floatValue());
+                tw.tab().print(this.gtest.getPval().get(i).floatValue());
+                tw.tab().print(this.gtest.getFdr().get(i).floatValue());
+                tw.tab().print(this.gtest.getBon().get(i).floatValue()).println();
             }
-            pw.close();
             var statisticsTextField = new TextField();
             statisticsTextField.setText(statisticsFile);
             return statisticsTextField;
@@ -140,56 +155,105 @@ public class StatisticsFile {
      */
     public TextField create_outsideFile(Map<String, List<Pair<String, String>>> mutantMerPair,
                                         Map<String, List<Pair<String, String>>> wildTypeMerPair, Node node) {
-        String outsideFile = this.options.getOutDirectory() + File.separator + this.options.getOut_prefix() + ".outside.txt";
-
-        try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(outsideFile))) {
-            PrintWriter pw = new PrintWriter(bw);
-
+        String outsideFile = this.out_prefix() + ".outside.txt"
+                + (this.options.getCompressOutside() ? OutsideIndex.COMPRESSED_EXTENSION : "");
+
+        // Uncompressed offset of each position line
+        OutsideIndex outsideIndex = new OutsideIndex();
+        OutputStream outputStream;
+        try (OutputStream os = this.open_outputStream(outsideFile);
+             TextFileWriter tw = new TextFileWriter(os)) {
+            outputStream = os;
             int number_of_extensions = this.create_outsideData(mutantMerPair, wildTypeMerPair);
 
             // Calculate FDR using the Benjamini-Hochberg method.
             Map<Integer, Map<Integer, Double>> fdr_extension = this.gtest.extended_fdr(this.outsideData.pval);
 
-            pw.println("#K-mer\t" + this.options.getKmer() + "\tFDR\t" + this.options.getThreshold_fdr()
-                    + "\tBases\t" + this.options.getBases_on_each_side());
+            tw.print("#K-mer\t").print(this.options.getKmer())
+                    .print("\tFDR\t").print(String.valueOf(this.options.getThreshold_fdr()))
+                    .print("\tBases\t").print(this.options.getBases_on_each_side())
+                    .print(this.preview_header()).println();
 
-            for (int i = 0; i < this.vectorArray.length() - this.options.getKmer(); i++) {
-                String kmer = this.vectorArray.substring(i, i + this.options.getKmer());
+            for (int i = 0; i < this.positions.length; i++) {
+                int pos = this.positions[i];
+                if (pos >= this.vectorArray.length() - this.options.getKmer()) {
+                    break;
+                }
+                String kmer = this.vectorArray.substring(pos, pos + this.options.getKmer());
                 if (this.gtest.getFdr().get(i) <= this.options.getThreshold_fdr()) {
-                    pw.print((i + 1) + "\t" + this.table_size.get(i));
-                    pw.print("\t" + kmer);
-                    pw.print("\t" + this.mutantPosFreq.get(i));
-                    pw.print("\t" + this.wildTypePosFreq.get(i));
-                    pw.print("\t" + this.gtest.getGval().get(i).floatValue());
-                    pw.print("\t" + this.gtest.getPval().get(i).floatValue());
-                    pw.print("\t" + this.gtest.getFdr().get(i).floatValue());
-                    pw.println("\t" + this.gtest.getBon().get(i).floatValue());
+                    outsideIndex.add(pos + 1, tw.getOffset(), this.table_size.get(i));
+                    tw.print(pos + 1).tab().print(this.table_size.get(i));
+                    tw.tab().print(kmer);
+                    tw.tab().print(this.mutantPosFreq.get(i));
+                    tw.tab().print(this.wildTypePosFreq.get(i));
+                    tw.tab().print(this.gtest.getGval().get(i).floatValue());
+                    tw.tab().print(this.gtest.getPval().get(i).floatValue());
+                    tw.tab().print(this.gtest.getFdr().get(i).floatValue());
+                    tw.tab().print(this.gtest.getBon().get(i).floatValue()).println();
 
                     for (int j = 0; j < this.outsideData.left_chain.get(i).size(); j++) {
-                        pw.print(this.outsideData.left_chain.get(i).get(j) + "\t");
-                        pw.print(this.outsideData.right_chain.get(i).get(j) + "\t");
-                        pw.print(this.outsideData.mutant_count.get(i).get(j) + "\t");
-                        pw.print(this.outsideData.wildType_count.get(i).get(j) + "\t");
-                        pw.print(this.outsideData.left_chain.get(i).get(j));
-                        pw.print(kmer);
-                        pw.print(this.outsideData.right_chain.get(i).get(j) + "\t");
-                        pw.print(this.outsideData.gval.get(i).get(j).floatValue() + "\t");
-                        pw.print(this.outsideData.pval.get(i).get(j).floatValue() + "\t");
-                        pw.print(fdr_extension.get(i).get(j).floatValue() + "\t");
-                        pw.println((float) Math.min(this.outsideData.pval.get(i).get(j) * number_of_extensions, 1.0));
+                        String left = this.outsideData.left_chain.get(i).get(j);
+                        String right = this.outsideData.right_chain.get(i).get(j);
+                        tw.print(left).tab().print(right);
+                        tw.tab().print(this.outsideData.mutant_count.get(i).get(j));
+                        tw.tab().print(this.outsideData.wildType_count.get(i).get(j));
+                        tw.tab().print(left).print(kmer).print(right);
+                        tw.tab().print(this.outsideData.gval.get(i).get(j).floatValue());
+                        tw.tab().print(this.outsideData.pval.get(i).get(j).floatValue());
+                        tw.tab().print(fdr_extension.get(i).get(j).floatValue());
+                        tw.tab().print((float) Math.min(this.outsideData.pval.get(i).get(j) * number_of_extensions, 1.0))
+                                .println();
                     }
                 }
             }
-
-            pw.close();
-            var outsideTextField = new TextField();
-            outsideTextField.setText(outsideFile);
-            return outsideTextField;
         } catch (IOException e) {
             String message = "Could not open (" + outsideFile + ").";
             CommonTools.runTimeErrorMessage(message, "red", node);
             return null;
         }
+
+        // The virtual offsets are complete once the file is closed
+        if (outputStream instanceof BgzfOutputStream bgzf) {
+            outsideIndex.convert_offsets(bgzf::virtualOffset);
+        }
+
+        // Sidecar index for random access from the alignment dialog
+        if (!outsideIndex.write(new File(outsideFile))) {
+            String message = "Could not create the index of (" + outsideFile + ").";
+            CommonTools.runTimeErrorMessage(message, "green", node);
+        }
+
+        var outsideTextField = new TextField();
+        outsideTextField.setText(outsideFile);
+        return outsideTextField;
+    }
+
+    /**
+     * Create the host.txt file (vector positions whose k-mer occurs in the host genome).
+     *
+     * @param hostMers vector k-mers shared with the host genome
+     * @param node     base screen for dialog
+     * @return true:write success, false:write failure
+     */
+    public boolean create_hostFile(Set<String> hostMers, Node node) {
+        String hostFile = this.out_prefix() + ".host.txt";
+
+        try (TextFileWriter tw = new TextFileWriter(Files.newOutputStream(Paths.get(hostFile)))) {
+            tw.print("#K-mer\t").print(this.options.getKmer())
+                    .print("\tHost\t").print(this.options.getHostKmerDrop() ? "drop" : "mark").println();
+            tw.print("#Pos\tSeq\tK-mer").println();
+            for (int pos : this.positions) {
+                Pair<String, String> pair = this.vectorPosPair.get(pos);
+                if (hostMers.contains(pair.getKey()) || hostMers.contains(pair.getValue())) {
+                    tw.print(pos + 1).tab().print(this.vectorArray.charAt(pos)).tab().print(pair.getKey()).println();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            String message = "Could not open (" + hostFile + ").";
+            CommonTools.runTimeErrorMessage(message, "red", node);
+            return false;
+        }
     }
 
     // Setter / Getter
@@ -204,6 +268,33 @@ public class StatisticsFile {
 
     void setVectorPosPair(Map<Integer, Pair<String, String>> vectorPosPair) {
         this.vectorPosPair = vectorPosPair;
+        this.positions = vectorPosPair.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Get the vector position of a tested position.
+     *
+     * @param index index of the position frequencies and the test results
+     * @return vector position (0-based)
+     */
+    int getPosition(int index) {
+        return this.positions[index];
+    }
+
+    Map<Integer, Pair<String, String>> getVectorPosPair() {
+        return this.vectorPosPair;
+    }
+
+    void setConstruct(String construct) {
+        this.construct = construct;
+    }
+
+    String getConstruct() {
+        return this.construct;
+    }
+
+    void setVectorName(String vectorName) {
+        this.vectorName = vectorName;
     }
 
     void setMutantPosFreq(List<Integer> mutantPosFreq) {
@@ -222,6 +313,50 @@ public class StatisticsFile {
     // Private function
     //============================================================================//
 
+    /**
+     * Output path without the extension.
+     *
+     * @return output directory / prefix (. construct)
+     */
+    private String out_prefix() {
+        String prefix = this.options.getOutDirectory() + File.separator + this.options.getOut_prefix();
+        return Objects.isNull(this.construct) ? prefix : prefix + "." + this.construct;
+    }
+
+    /**
+     * Name of the vector record on the header line.
+     * A default run keeps the header of a single vector; the name is added where the vector cannot be told from
+     * the file (a construct of a multi-construct run, or a run on the intervals of a region file).
+     *
+     * @return vector name, empty unless a multi-construct or region run
+     */
+    private String vector_header() {
+        boolean named = this.options.getMultiConstruct() || Objects.nonNull(this.options.getRegionFile());
+        return named && !this.vectorName.isEmpty() ? "\tVector\t" + this.vectorName : "";
+    }
+
+    /**
+     * Mark of the preview run on the header line.
+     *
+     * @return preview fraction and seed, empty unless a preview run
+     */
+    private String preview_header() {
+        return this.options.preview_run()
+                ? "\tPreview\t" + this.options.getPreview() + "\tSeed\t" + this.options.getPreviewSeed() : "";
+    }
+
+    /**
+     * Open the output stream of the outside.txt file.
+     *
+     * @param outsideFile outside.txt file
+     * @return block compressed (BGZF) stream if the compression option is set, otherwise file stream
+     * @throws IOException if the file could not be created
+     */
+    private OutputStream open_outputStream(String outsideFile) throws IOException {
+        OutputStream os = Files.newOutputStream(Paths.get(outsideFile));
+        return this.options.getCompressOutside() ? new BgzfOutputStream(os) : os;
+    }
+
     /**
      * Create outside data.
      *
@@ -235,10 +370,13 @@ public class StatisticsFile {
         Map<Pair<Integer, Integer>, Double> pval_stock = new HashMap<>();
         int number_of_extensions = 0;
 
-        for (int i = 0; i < this.vectorArray.length() - this.options.getKmer(); i++) {
+        for (int i = 0; i < this.positions.length; i++) {
+            if (this.positions[i] >= this.vectorArray.length() - this.options.getKmer()) {
+                break;
+            }
             if (this.gtest.getFdr().get(i) <= this.options.getThreshold_fdr()) {
-                final String mer_plus = this.vectorPosPair.get(i).getKey();
-                final String mer_minus = this.vectorPosPair.get(i).getValue();
+                final String mer_plus = this.vectorPosPair.get(this.positions[i]).getKey();
+                final String mer_minus = this.vectorPosPair.get(this.positions[i]).getValue();
 
                 Map<Pair<String, String>, Integer> mutant_side_pair_count = new HashMap<>();
                 Map<Pair<String, String>, Integer> wildType_side_pair_count = new HashMap<>();
@@ -0,0 +1,238 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text file writer class.
+ * Rows are formatted directly into a reusable byte buffer, which is written to the stream in large blocks.
+ * The output is the same as PrintWriter (UTF-8, System.lineSeparator(), Integer.toString and Float.toString).
+ *
+ * @author NARO
+ */
+public class TextFileWriter implements AutoCloseable {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * buffer size
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * line separator
+     */
+    private static final byte[] BR = CommonTools.BR.getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * size of the float string cache (power of 2)
+     */
+    private static final int FLOAT_CACHE_SIZE = 1 << 12;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;              // bytes in the buffer
+    private long offset = 0L;           // bytes written before the buffer
+    private boolean closed = false;
+
+    /**
+     * float string cache (the statistics contain many repeated values such as 1.0)
+     */
+    private final int[] floatBits = new int[FLOAT_CACHE_SIZE];
+    private final byte[][] floatBytes = new byte[FLOAT_CACHE_SIZE][];
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Text file writer class constructor.
+     *
+     * @param out output stream
+     */
+    public TextFileWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Print a string.
+     *
+     * @param s string
+     * @return this
+     * @throws IOException if an I/O error occurs
+     */
+    public TextFileWriter print(String s) throws IOException {
+        int length = s.length();
+        if (length > BUFFER_SIZE - this.count) {
+            this.flush_buffer();
+            if (length > BUFFER_SIZE) {
+                return this.print(s.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // Non-ASCII characters
+                return this.print(s.getBytes(StandardCharsets.UTF_8));
+            }
+            this.buffer[this.count + i] = (byte) c;
+        }
+        this.count += length;
+        return this;
+    }
+
+    /**
+     * Print a character (ASCII).
+     *
+     * @param c character
+     * @return this
+     * @throws IOException if an I/O error occurs
+     */
+    public TextFileWriter print(char c) throws IOException {
+        if (this.count == BUFFER_SIZE) {
+            this.flush_buffer();
+        }
+        this.buffer[this.count++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Print an integer.
+     *
+     * @param value integer
+     * @return this
+     * @throws IOException if an I/O error occurs
+     */
+    public TextFileWriter print(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            return this.print(Long.toString(value));
+        }
+        if (BUFFER_SIZE - this.count < 20) {
+            this.flush_buffer();
+        }
+        if (value < 0) {
+            this.buffer[this.count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int p = this.count + digits - 1; p >= this.count; p--) {
+            this.buffer[p] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        this.count += digits;
+        return this;
+    }
+
+    /**
+     * Print a float in the same format as Float.toString.
+     *
+     * @param value float
+     * @return this
+     * @throws IOException if an I/O error occurs
+     */
+    public TextFileWriter print(float value) throws IOException {
+        int bits = Float.floatToRawIntBits(value);
+        int i = (bits ^ bits >>> 15) * 0x9e3779b1 >>> 20;
+        byte[] bytes = this.floatBytes[i];
+        if (bytes == null || this.floatBits[i] != bits) {
+            bytes = Float.toString(value).getBytes(StandardCharsets.US_ASCII);
+            this.floatBits[i] = bits;
+            this.floatBytes[i] = bytes;
+        }
+        return this.print(bytes);
+    }
+
+    /**
+     * Print a tab.
+     *
+     * @return this
+     * @throws IOException if an I/O error occurs
+     */
+    public TextFileWriter tab() throws IOException {
+        return this.print('\t');
+    }
+
+    /**
+     * Print the line separator.
+     *
+     * @return this
+     * @throws IOException if an I/O error occurs
+     */
+    public TextFileWriter println() throws IOException {
+        return this.print(BR);
+    }
+
+    /**
+     * Get the number of bytes printed.
+     *
+     * @return offset of the next byte
+     */
+    public long getOffset() {
+        return this.offset + this.count;
+    }
+
+    /**
+     * Write the buffer and close the stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.flush_buffer();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Print bytes.
+     *
+     * @param bytes bytes
+     * @return this
+     * @throws IOException if an I/O error occurs
+     */
+    private TextFileWriter print(byte[] bytes) throws IOException {
+        if (bytes.length > BUFFER_SIZE - this.count) {
+            this.flush_buffer();
+            if (bytes.length > BUFFER_SIZE) {
+                this.out.write(bytes);
+                this.offset += bytes.length;
+                return this;
+            }
+        }
+        System.arraycopy(bytes, 0, this.buffer, this.count, bytes.length);
+        this.count += bytes.length;
+        return this;
+    }
+
+    /**
+     * Write the buffer to the stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void flush_buffer() throws IOException {
+        this.out.write(this.buffer, 0, this.count);
+        this.offset += this.count;
+        this.count = 0;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.List;
+
+/**
+ * Thread plan class.
+ * Decides how the threads are shared: the number of fastq files read in parallel (each by its calling thread,
+ * see FastqReader) and the maximum number of scan workers per file. A compressed file keeps its reader busy
+ * with inflating, so the readers of compressed files are counted as threads; an uncompressed file is read
+ * by the operating system and its reader mostly waits. In the paired-end mode an R1 file and its R2 file are
+ * read together as one job (see WorkScheduler), and a compressed R2 file is inflated by a thread of its own.
+ * With the early stop every job is read at once (see EarlyStop), so the threads and the memory are shared among
+ * all the jobs, and the plan does not fit when the jobs outnumber the threads or the memory of one worker each.
+ *
+ * @author NARO
+ */
+public class ThreadPlan {
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * working memory per thread (batches of the fastq reader, count arrays, flank pairs of a batch)
+     */
+    private static final long THREAD_MEMORY = 32L << 20;
+
+    /**
+     * memory of the chunk array
+     */
+    private static final long CHUNK_MEMORY = 1L << 30;
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    private final int threads;
+    private final int files;                // files (or pairs) read in parallel
+    private final boolean paired;           // some jobs are pairs
+    private final boolean together;         // every job read at once (early stop)
+    private final boolean fits;             // the jobs read at once fit the threads and the memory
+    private final int workers;              // maximum scan workers per file
+    private final int compressed;           // compressed files
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Thread plan class constructor.
+     *
+     * @param threads    maximum number of threads
+     * @param fastqFiles mutant and wild type files
+     * @param jobs       number of jobs (an R1 file and its R2 file make one job)
+     * @param together   true:every job is read at once (early stop)
+     */
+    public ThreadPlan(int threads, List<String> fastqFiles, int jobs, boolean together) {
+        this.threads = Math.max(1, threads);
+        this.compressed = (int) fastqFiles.stream().filter(file -> file.endsWith(".gz")).count();
+        this.files = Math.max(1, together ? jobs : Math.min(this.threads, jobs));
+        this.paired = jobs < fastqFiles.size();
+        this.together = together;
+
+        int readers = jobs == 0 ? 0 : (int) Math.ceil((double) this.files * this.compressed / jobs);
+        int byThreads = (this.threads - readers) / this.files;
+        int byMemory = (int) (usable_memory() / THREAD_MEMORY / this.files);
+        this.workers = Math.max(1, Math.min(byThreads, byMemory));
+        this.fits = !together || (this.files <= this.threads && byMemory >= 1);
+    }
+
+    /**
+     * Default maximum number of threads (all cores, as far as the memory allows).
+     *
+     * @return number of threads
+     */
+    public static int default_threads() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return (int) Math.max(1, Math.min(cores, usable_memory() / THREAD_MEMORY));
+    }
+
+    /**
+     * Get the number of files (or pairs) read in parallel.
+     *
+     * @return files
+     */
+    public int getFiles() {
+        return this.files;
+    }
+
+    /**
+     * Get the maximum number of scan workers per file.
+     *
+     * @return workers
+     */
+    public int getWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * Whether the jobs read at once fit the threads and the memory (always true unless the early stop).
+     *
+     * @return true:fits, false:too many jobs
+     */
+    public boolean fits() {
+        return this.fits;
+    }
+
+    @Override
+    public String toString() {
+        return "Threads " + this.threads + " (" + Runtime.getRuntime().availableProcessors() + " cores, "
+                + physical_memory() / (1L << 30) + " GB memory): " + this.files
+                + (this.paired ? " file(s) or pair(s)" : " file(s)") + (this.together ? " at once" : " in parallel")
+                + ", up to "
+                + this.workers + " scan worker(s) per file (" + this.compressed + " compressed file(s)).";
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Physical memory of the machine.
+     *
+     * @return bytes (maximum heap size if unknown)
+     */
+    private static long physical_memory() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean sun) {
+            return sun.getTotalMemorySize();
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * Memory left for the threads (half of the heap, or of the physical memory if it is smaller,
+     * after the chunk array).
+     *
+     * @return bytes
+     */
+    private static long usable_memory() {
+        long memory = Math.min(Runtime.getRuntime().maxMemory(), physical_memory());
+        return Math.max(THREAD_MEMORY, (memory - CHUNK_MEMORY) / 2);
+    }
+}
@@ -35,8 +35,27 @@ public class UserConfiguration {
     String out_prefix;              // Output prefix count mer
     String outDirectory;            // Output directory count mer
     boolean checkOutsideKmer;       // Outside the k-mer sequences
+    boolean compressOutside;        // Compress the outside file
     int threads;                    // Maximum number of threads
 
+    // Advanced options (configuration file only)
+    boolean multiConstruct;         // Multi-construct screening
+    String regionFile;              // Region file (BED) of the vector positions to be indexed
+    String hostReference;           // Host genome fasta file
+    boolean hostKmerDrop;           // Host k-mer mode (true:drop, false:mark)
+    boolean stripedCounts;          // Count table (true:striped, false:local)
+    int offHeapMemory;              // Off-heap memory of the flank tables (MB, 0:heap)
+    int trimQuality;                // Mean quality of the trimming window (0:no trimming)
+    int trimWindow = 4;             // Bases of the trimming window
+    int maskQuality;                // Quality below which a base is masked (0:no masking)
+    String trimAdapter;             // Adapter sequence clipped from the reads
+    String pairedEnd;               // Paired-end input (files, interleaved, null:single-end)
+    int duplicateCache;             // Memory of the duplicate read caches (MB, 0:no cache)
+    int earlyStop;                  // Reads per round of the early stop (0:no early stop)
+    int earlyStopTolerance;         // Positions that may change between stable rounds
+    double preview;                 // Fraction of the reads of a preview run (0:all the reads)
+    long previewSeed;               // Seed of the preview sample
+
     // Draw graph
     String yupperAxisTitle;         // Y-axis (upper) title
     boolean yupperAxisAuto;         // Y-axis (upper) auto
@@ -137,6 +156,59 @@ public class UserConfiguration {
                     case "OUTSIDE_THE_KMER_SEQUENCES":
                         this.checkOutsideKmer = data[1].equals("true");
                         break;
+                    case "COMPRESS_OUTSIDE_FILE":
+                        this.compressOutside = data[1].equals("true");
+                        break;
+
+                    // Advanced options
+                    case "MULTI_CONSTRUCT":
+                        this.multiConstruct = data[1].equals("true");
+                        break;
+                    case "REGION_FILE":
+                        this.regionFile = data[1];
+                        break;
+                    case "HOST_REFERENCE":
+                        this.hostReference = data[1];
+                        break;
+                    case "HOST_KMER_MODE":
+                        this.hostKmerDrop = data[1].equals("drop");
+                        break;
+                    case "COUNT_TABLE":
+                        this.stripedCounts = data[1].equals("striped");
+                        break;
+                    case "OFFHEAP_MEMORY":
+                        this.offHeapMemory = Integer.parseInt(data[1]);
+                        break;
+                    case "TRIM_QUALITY":
+                        this.trimQuality = Integer.parseInt(data[1]);
+                        break;
+                    case "TRIM_WINDOW":
+                        this.trimWindow = Integer.parseInt(data[1]);
+                        break;
+                    case "MASK_QUALITY":
+                        this.maskQuality = Integer.parseInt(data[1]);
+                        break;
+                    case "TRIM_ADAPTER":
+                        this.trimAdapter = data[1];
+                        break;
+                    case "DUPLICATE_CACHE":
+                        this.duplicateCache = Integer.parseInt(data[1]);
+                        break;
+                    case "EARLY_STOP":
+                        this.earlyStop = Integer.parseInt(data[1]);
+                        break;
+                    case "EARLY_STOP_TOLERANCE":
+                        this.earlyStopTolerance = Integer.parseInt(data[1]);
+                        break;
+                    case "PREVIEW":
+                        this.preview = Double.parseDouble(data[1]);
+                        break;
+                    case "PREVIEW_SEED":
+                        this.previewSeed = Long.parseLong(data[1]);
+                        break;
+                    case "PAIRED_END":
+                        this.pairedEnd = data[1].equals("files") || data[1].equals("interleaved") ? data[1] : null;
+                        break;
                     case "THREADS":
                         this.threads = Integer.parseInt(data[1]);
                         break;
@@ -271,10 +343,53 @@ public class UserConfiguration {
             } else {
                 pw.println("OUTSIDE_THE_KMER_SEQUENCES\tfalse");
             }
+            pw.println("COMPRESS_OUTSIDE_FILE\t" + this.compressOutside);
             if (this.threads > 0) {
                 pw.println("THREADS\t" + this.threads);
             }
 
+            // Advanced options
+            if (this.multiConstruct) {
+                pw.println("MULTI_CONSTRUCT\ttrue");
+            }
+            if (this.regionFile != null && !this.regionFile.isEmpty()) {
+                pw.println("REGION_FILE\t" + this.regionFile);
+            }
+            if (this.hostReference != null && !this.hostReference.isEmpty()) {
+                pw.println("HOST_REFERENCE\t" + this.hostReference);
+                pw.println("HOST_KMER_MODE\t" + (this.hostKmerDrop ? "drop" : "mark"));
+            }
+            if (this.stripedCounts) {
+                pw.println("COUNT_TABLE\tstriped");
+            }
+            if (this.offHeapMemory > 0) {
+                pw.println("OFFHEAP_MEMORY\t" + this.offHeapMemory);
+            }
+            if (this.trimQuality > 0) {
+                pw.println("TRIM_QUALITY\t" + this.trimQuality);
+                pw.println("TRIM_WINDOW\t" + this.trimWindow);
+            }
+            if (this.maskQuality > 0) {
+                pw.println("MASK_QUALITY\t" + this.maskQuality);
+            }
+            if (this.trimAdapter != null && !this.trimAdapter.isEmpty()) {
+                pw.println("TRIM_ADAPTER\t" + this.trimAdapter);
+            }
+            if (this.pairedEnd != null) {
+                pw.println("PAIRED_END\t" + this.pairedEnd);
+            }
+            if (this.duplicateCache > 0) {
+                pw.println("DUPLICATE_CACHE\t" + this.duplicateCache);
+            }
+            if (this.earlyStop > 0) {
+                pw.println("EARLY_STOP\t" + this.earlyStop);
+                pw.println("EARLY_STOP_TOLERANCE\t" + this.earlyStopTolerance);
+            }
+            if (this.preview > 0.0) {
+                pw.println("PREVIEW\t" + this.preview);
+                pw.println("PREVIEW_SEED\t" + this.previewSeed);
+            }
+
             // Draw graph
             if (this.yupperAxisTitle != null && !this.yupperAxisTitle.isEmpty()) {
                 pw.println("YUPPER_AXIS_TITLE\t" + this.yupperAxisTitle);
@@ -426,6 +541,15 @@ public class UserConfiguration {
         return this.checkOutsideKmer;
     }
 
+    // Compress the outside file
+    public void setCompressOutside(CheckBox cb) {
+        this.compressOutside = cb.isSelected();
+    }
+
+    public boolean getCompressOutside() {
+        return this.compressOutside;
+    }
+
     // Maximum number of threads
     public void setThreads(Spinner<Integer> sp) {
         this.threads = this.spinnerValue(sp);
@@ -435,6 +559,87 @@ public class UserConfiguration {
         return this.threads;
     }
 
+    //========== Advanced options
+    // Multi-construct screening
+    public boolean getMultiConstruct() {
+        return this.multiConstruct;
+    }
+
+    // Region file (BED) of the vector positions to be indexed
+    public String getRegionFile() {
+        return this.regionFile;
+    }
+
+    // Host genome fasta file
+    public String getHostReference() {
+        return this.hostReference;
+    }
+
+    // Host k-mer mode (true:drop, false:mark)
+    public boolean getHostKmerDrop() {
+        return this.hostKmerDrop;
+    }
+
+    // Count table (true:striped, false:local)
+    public boolean getStripedCounts() {
+        return this.stripedCounts;
+    }
+
+    // Off-heap memory of the flank tables (MB, 0:heap)
+    public int getOffHeapMemory() {
+        return this.offHeapMemory;
+    }
+
+    // Mean quality of the trimming window (0:no trimming)
+    public int getTrimQuality() {
+        return this.trimQuality;
+    }
+
+    // Bases of the trimming window
+    public int getTrimWindow() {
+        return this.trimWindow;
+    }
+
+    // Quality below which a base is masked (0:no masking)
+    public int getMaskQuality() {
+        return this.maskQuality;
+    }
+
+    // Adapter sequence clipped from the reads
+    public String getTrimAdapter() {
+        return this.trimAdapter;
+    }
+
+    // Paired-end input (files, interleaved, null:single-end)
+    public String getPairedEnd() {
+        return this.pairedEnd;
+    }
+
+    // Memory of the duplicate read caches (MB, 0:no cache)
+    public int getDuplicateCache() {
+        return this.duplicateCache;
+    }
+
+    // Reads per round of the early stop (0:no early stop)
+    public int getEarlyStop() {
+        return this.earlyStop;
+    }
+
+    // Positions that may change between stable rounds of the early stop
+    public int getEarlyStopTolerance() {
+        return this.earlyStopTolerance;
+    }
+
+    // Fraction of the reads of a preview run (0:all the reads)
+    public double getPreview() {
+        return this.preview;
+    }
+
+    // Seed of the preview sample
+    public long getPreviewSeed() {
+        return this.previewSeed;
+    }
+
     //========== Draw graph
     // Y-axis (upper) title
     public void setYupperAxisTitle(TextField tf) {
@@ -692,8 +897,27 @@ public class UserConfiguration {
         this.out_prefix = null;
         this.outDirectory = null;
         this.checkOutsideKmer = false;
+        this.compressOutside = false;
         this.threads = 0;
 
+        // Advanced options
+        this.multiConstruct = false;
+        this.regionFile = null;
+        this.hostReference = null;
+        this.hostKmerDrop = false;
+        this.stripedCounts = false;
+        this.offHeapMemory = 0;
+        this.trimQuality = 0;
+        this.trimWindow = 4;
+        this.maskQuality = 0;
+        this.trimAdapter = null;
+        this.pairedEnd = null;
+        this.duplicateCache = 0;
+        this.earlyStop = 0;
+        this.earlyStopTolerance = 0;
+        this.preview = 0.0;
+        this.previewSeed = 0L;
+
         // Draw graph
         this.yupperAxisTitle = null;
         this.yupperAxisAuto = true;
@@ -0,0 +1,23 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import javafx.util.Pair;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Vector construct class.
+ * One record of the vector fasta file in the multi-construct screening.
+ *
+ * @author NARO
+ */
+public class VectorConstruct {
+    public String name;
+    public String record;                   // first word of the header line (the name in the region file)
+    public String vectorArray;
+    public Map<Integer, Pair<String, String>> posPair = new TreeMap<>();     // in the position order
+}
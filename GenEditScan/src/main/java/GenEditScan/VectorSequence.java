@@ -7,13 +7,21 @@ package GenEditScan;
 import javafx.util.Pair;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * Vector sequence processing class.
+ * With a region file (BED: name, 0-based start and end of each interval) only the positions in the intervals of
+ * a record are indexed and counted; the intervals of a record are those named by the first word of its header
+ * (in the single vector mode all the intervals, if none is named so). The position pairs keep the vector
+ * positions as keys, in ascending order.
  *
  * @author NARO
  */
@@ -40,6 +48,31 @@ public class VectorSequence {
      */
     private String vectorArray;
 
+    /**
+     * name of the vector record (first word of its header line, empty if none)
+     */
+    private String vectorName = "";
+
+    /**
+     * vector constructs (multi-construct screening)
+     */
+    private final List<VectorConstruct> constructs = new ArrayList<>();
+
+    /**
+     * host genome k-mer index (null:not used)
+     */
+    private HostKmerIndex hostKmerIndex = null;
+
+    /**
+     * vector k-mers shared with the host genome
+     */
+    private final Set<String> hostMers = new HashSet<>();
+
+    /**
+     * intervals of the region file per record name (null:every position)
+     */
+    private Map<String, List<int[]>> regions = null;
+
     //========================================================================//
     // Public function
     //========================================================================//
@@ -64,26 +97,18 @@ public class VectorSequence {
      */
     public boolean read_vectorFile(Map<String, Integer> merCounter, Map<Integer, Pair<String, String>> posPair) {
         File file = new File(this.options.getVector_file());
-        List<String> readList = new ArrayList<>();
-        try (BufferedReader br = Files.newBufferedReader(file.toPath())) {
-            String str;
-            while ((str = br.readLine()) != null) {
-                readList.add(str);
-            }
-        } catch (IOException e) {
+        // The k-mers of all records are counted, and the last record is the vector sequence.
+        String[] circulation = new String[1];
+        String[] name = new String[1];
+        if (!this.read_fasta(file, (header, sequence) -> {
+            name[0] = record_name(header);
+            circulation[0] = this.set_merCounter(sequence, merCounter, posPair,
+                    this.region_positions(name[0], sequence.length(), true));
+        })) {
             return false;
         }
-
-        StringBuilder sequence = new StringBuilder();
-        for (String str : readList) {
-            if (str.startsWith(">")) {
-                this.set_merCounter(sequence.toString(), merCounter, posPair);
-                sequence = new StringBuilder();
-            } else {
-                sequence.append(str);
-            }
-        }
-        this.vectorArray = this.set_merCounter(sequence.toString(), merCounter, posPair);
+        this.vectorArray = circulation[0];
+        this.vectorName = name[0];
         if (this.vectorArray != null) {
             this.create_chunk(merCounter);
             return true;
@@ -92,6 +117,69 @@ public class VectorSequence {
         }
     }
 
+    /**
+     * Read a fasta file of multiple vector constructs.
+     * The k-mers of all records are put in one dictionary, and each record keeps its own position pairs.
+     *
+     * @param merCounter mer and its counts
+     * @return true:read success, false:read failure
+     */
+    public boolean read_constructFile(Map<String, Integer> merCounter) {
+        File file = new File(this.options.getVector_file());
+        this.constructs.clear();
+        Set<String> names = new HashSet<>();
+        if (!this.read_fasta(file, (header, sequence) -> this.add_construct(header, sequence, merCounter, names))) {
+            return false;
+        }
+
+        if (this.constructs.isEmpty()) {
+            return false;
+        }
+        this.vectorArray = this.constructs.get(0).vectorArray;
+        this.create_chunk(merCounter);
+        return true;
+    }
+
+    /**
+     * Read the region file (BED) of the options.
+     * Header, track and browser lines are skipped.
+     *
+     * @return true:read success (or no region file), false:read failure
+     */
+    public boolean read_regionFile() {
+        this.regions = null;
+        String regionFile = this.options.getRegionFile();
+        if (Objects.isNull(regionFile) || regionFile.isEmpty()) {
+            return true;
+        }
+        Map<String, List<int[]>> intervals = new LinkedHashMap<>();
+        try {
+            for (String line : Files.readAllLines(new File(regionFile).toPath())) {
+                String str = line.trim();
+                if (str.isEmpty() || str.startsWith("#") || str.startsWith("track") || str.startsWith("browser")) {
+                    continue;
+                }
+                String[] data = str.split("\\s+");
+                if (data.length < 3) {
+                    return false;
+                }
+                int start = Integer.parseInt(data[1]);
+                int end = Integer.parseInt(data[2]);
+                if (start < 0 || end <= start) {
+                    return false;
+                }
+                intervals.computeIfAbsent(data[0], name -> new ArrayList<>()).add(new int[]{start, end});
+            }
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+        if (intervals.isEmpty()) {
+            return false;
+        }
+        this.regions = intervals;
+        return true;
+    }
+
     /**
      * Get vector array.
      *
@@ -101,45 +189,222 @@ public class VectorSequence {
         return this.vectorArray;
     }
 
+    /**
+     * Get the name of the vector record.
+     *
+     * @return first word of the header line, empty if none
+     */
+    public String getVectorName() {
+        return this.vectorName;
+    }
+
+    /**
+     * Name of the vector record of a fasta file (the last record, as read by read_vectorFile).
+     *
+     * @param file fasta file
+     * @return first word of the header line, null if none or the file cannot be read
+     */
+    public static String vector_name(File file) {
+        String name = null;
+        try (BufferedReader br = Files.newBufferedReader(file.toPath())) {
+            String str;
+            while ((str = br.readLine()) != null) {
+                if (str.startsWith(">")) {
+                    name = record_name(str.substring(1));
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return Objects.isNull(name) || name.isEmpty() ? null : name;
+    }
+
+    /**
+     * Get vector constructs.
+     *
+     * @return vector constructs
+     */
+    public List<VectorConstruct> getConstructs() {
+        return this.constructs;
+    }
+
+    /**
+     * Set the host genome k-mer index consulted before counting.
+     *
+     * @param hostKmerIndex host genome k-mer index
+     */
+    public void setHostKmerIndex(HostKmerIndex hostKmerIndex) {
+        this.hostKmerIndex = hostKmerIndex;
+    }
+
+    /**
+     * Get the vector k-mers shared with the host genome.
+     *
+     * @return k-mers (both strands)
+     */
+    public Set<String> getHostMers() {
+        return this.hostMers;
+    }
+
     //========================================================================//
     // Private function
     //========================================================================//
 
+    /**
+     * Read a fasta file record by record.
+     * Each record is encoded into a packed sequence while the file is streamed,
+     * and the sequence lines before the first header are a record without a header.
+     *
+     * @param file   fasta file
+     * @param record called with the header line (without "&gt;", null if none) and the sequence of each record
+     * @return true:read success, false:read failure
+     */
+    private boolean read_fasta(File file, BiConsumer<String, PackedSequence> record) {
+        byte[] buffer = new byte[1 << 16];
+        ByteArrayOutputStream header = null;
+        PackedSequence sequence = new PackedSequence();
+        boolean lineStart = true;
+        boolean inHeader = false;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int r;
+            while ((r = in.read(buffer)) != -1) {
+                for (int i = 0; i < r; i++) {
+                    byte c = buffer[i];
+                    if (c == '\n' || c == '\r') {
+                        lineStart = true;
+                        inHeader = false;
+                    } else if (lineStart && c == '>') {
+                        record.accept(this.header_string(header), sequence);
+                        header = new ByteArrayOutputStream();
+                        sequence = new PackedSequence();
+                        lineStart = false;
+                        inHeader = true;
+                    } else {
+                        lineStart = false;
+                        if (inHeader) {
+                            header.write(c);
+                        } else {
+                            sequence.append(c);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        record.accept(this.header_string(header), sequence);
+        return true;
+    }
+
+    /**
+     * Decode the header line.
+     *
+     * @param header header bytes (null if none)
+     * @return header line
+     */
+    private String header_string(ByteArrayOutputStream header) {
+        return header == null ? null : header.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Name of a record (first word of the header line).
+     *
+     * @param header header line of the record (null if none)
+     * @return name, empty if none
+     */
+    private static String record_name(String header) {
+        String[] words = header == null ? new String[0] : header.trim().split("\\s+");
+        return words.length > 0 ? words[0] : "";
+    }
+
+    /**
+     * Positions of a record in the intervals of the region file.
+     *
+     * @param name     record name
+     * @param length   sequence length
+     * @param fallback true:all the intervals if none is named after the record
+     * @return positions, null:every position
+     */
+    private BitSet region_positions(String name, int length, boolean fallback) {
+        if (this.regions == null) {
+            return null;
+        }
+        List<int[]> intervals = this.regions.get(name);
+        if (intervals == null) {
+            if (!fallback) {
+                return null;
+            }
+            intervals = new ArrayList<>();
+            this.regions.values().forEach(intervals::addAll);
+        }
+        BitSet positions = new BitSet(length);
+        for (int[] interval : intervals) {
+            positions.set(Math.min(interval[0], length), Math.min(interval[1], length));
+        }
+        return positions;
+    }
+
     /**
      * Set k-mer in hash table.
      *
      * @param sequence   vector sequence
      * @param merCounter mer and its counts
      * @param posPair    vector position mer pairs
+     * @param positions  positions to be indexed (null:every position)
+     * @return vector sequence followed by its first (k-mer - 1) bases, null if the sequence is empty
+     * or no position is indexed
      */
-    private String set_merCounter(String sequence, Map<String, Integer> merCounter,
-                                  Map<Integer, Pair<String, String>> posPair) {
+    private String set_merCounter(PackedSequence sequence, Map<String, Integer> merCounter,
+                                  Map<Integer, Pair<String, String>> posPair, BitSet positions) {
         int kmer = this.options.getKmer();
         int vector_length = sequence.length();
 
-        if (vector_length > 0) {
-            String buff = sequence +
-                    sequence.substring(0, kmer - 1);
-
-            // Convert to upper case
-            String circulation = buff.toUpperCase();
-
-            for (int i = 0; i < vector_length; i++) {
-                String mer = circulation.substring(i, kmer + i);
-                // Complementary sequence of kmer
-                String revMer = CommonTools.complementaryMer(mer);
+        if (vector_length > 0 && (positions == null || !positions.isEmpty())) {
+            sequence.forEachMer(kmer, positions, (i, mer, revMer) -> {
                 merCounter.put(mer, 0);
                 merCounter.put(revMer, 0);
                 posPair.put(i, new Pair<>(mer, revMer));
-            }
-            return circulation;
+            });
+            return sequence.toString(vector_length + kmer - 1);
         } else {
             return null;
         }
     }
 
+    /**
+     * Add a vector construct.
+     *
+     * @param header     header line of the record (without "&gt;")
+     * @param sequence   vector sequence
+     * @param merCounter mer and its counts
+     * @param names      names already used
+     */
+    private void add_construct(String header, PackedSequence sequence, Map<String, Integer> merCounter,
+                               Set<String> names) {
+        VectorConstruct construct = new VectorConstruct();
+        construct.vectorArray = this.set_merCounter(sequence, merCounter, construct.posPair,
+                this.region_positions(record_name(header), sequence.length(), false));
+        if (construct.vectorArray == null) {
+            return;
+        }
+
+        // Name used in the output files (first word of the header)
+        String name = record_name(header).replaceAll("[^A-Za-z0-9._-]", "_");
+        if (name.isEmpty()) {
+            name = "construct" + (this.constructs.size() + 1);
+        }
+        String unique = name;
+        for (int i = 2; !names.add(unique); i++) {
+            unique = name + "_" + i;
+        }
+        construct.name = unique;
+        construct.record = record_name(header);
+        this.constructs.add(construct);
+    }
+
     /**
      * Create chunk array.
+     * The k-mers shared with the host genome are not counted in the drop mode (their counts stay 0).
      *
      * @param merCounter mer and its counts
      */
@@ -147,7 +412,21 @@ public class VectorSequence {
         byte[] dna2bit = this.bitwiseOperation.getDna2bit();
         byte[] chunk = this.bitwiseOperation.getChunk();
 
-        for (String str : merCounter.keySet()) {
+        Collection<String> mers = merCounter.keySet();
+        this.hostMers.clear();
+        if (this.hostKmerIndex != null) {
+            for (String mer : merCounter.keySet()) {
+                if (this.hostKmerIndex.contains(mer)) {
+                    this.hostMers.add(mer);
+                }
+            }
+            if (this.options.getHostKmerDrop()) {
+                mers = new ArrayList<>(merCounter.keySet());
+                mers.removeAll(this.hostMers);
+            }
+        }
+
+        for (String str : mers) {
             int dnabit = dna2bit[str.charAt(0)];
             for (int i = 1; i < this.options.getChunk_length(); i++) {
                 dnabit = (dnabit << 2) + dna2bit[str.charAt(i)];
@@ -156,5 +435,6 @@ public class VectorSequence {
                 chunk[dnabit] = 1;
             }
         }
+        this.bitwiseOperation.create_kmerIndex(mers);
     }
 }
@@ -0,0 +1,397 @@
+/*
+ * GenEditScan-GUI
+ * Copyright 2019 National Agriculture and Food Research Organization (NARO)
+ */
+package GenEditScan;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Work scheduler class.
+ * The fastq files are submitted largest first (LPT: longest processing time first), so that a large file
+ * does not start last and leave the other threads idle. The size of a compressed file is estimated from
+ * the compression ratio of its first block. The predicted and actual critical paths of each phase
+ * are written to the schedule.txt file.
+ * In the paired-end mode the R1 and R2 files of a sample (named *_R1* and *_R2*, or *_1* and *_2*, in the same
+ * list) are scheduled as one job, and the two files are read together (see FastqReader).
+ *
+ * @author NARO
+ */
+public class WorkScheduler {
+    //========================================================================//
+    // Local class
+    //========================================================================//
+    /**
+     * Execution options class
+     */
+    private final Options options;
+
+    /**
+     * Fastq file (or R1 and R2 files) to be processed.
+     */
+    public static class Job {
+        public final boolean mutant;        // true:mutant, false:wild type
+        public final int index;             // file index
+        public final int mate;              // file index of the R2 file (-1:no R2 file)
+        public final File file;
+        public final File mateFile;         // R2 file (null:no R2 file)
+        public final long size;             // on-disk size
+        public final long weight;           // estimated uncompressed size
+        private long nanos = 0L;            // processing time of the current phase
+
+        private Job(boolean mutant, int index, int mate, File file, File mateFile, long size, long weight) {
+            this.mutant = mutant;
+            this.index = index;
+            this.mate = mate;
+            this.file = file;
+            this.mateFile = mateFile;
+            this.size = size;
+            this.weight = weight;
+        }
+    }
+
+    //========================================================================//
+    // Local parameters
+    //========================================================================//
+    /**
+     * compressed bytes read to estimate the compression ratio
+     */
+    private static final int SAMPLE_SIZE = 1 << 20;
+
+    /**
+     * file name of an R1 file (R1 is replaced with R2 for the name of the R2 file)
+     */
+    private static final Pattern R1_NAME = Pattern.compile("^(.*[._-]R?)1([._-].*)$");
+
+    //========================================================================//
+    // Local data
+    //========================================================================//
+    /**
+     * jobs in the list order of the options
+     */
+    private final List<Job> listOrder = new ArrayList<>();
+
+    /**
+     * jobs in the submission order (largest first)
+     */
+    private final List<Job> jobs;
+
+    /**
+     * report lines of the finished phases
+     */
+    private final List<String> report = new ArrayList<>();
+
+    //========================================================================//
+    // Public function
+    //========================================================================//
+
+    /**
+     * Work scheduler class constructor.
+     *
+     * @param options Execution options class
+     */
+    public WorkScheduler(Options options) {
+        this.options = options;
+        this.add_jobs(true, options.getMutant_files());
+        this.add_jobs(false, options.getWildType_files());
+        this.jobs = new ArrayList<>(this.listOrder);
+        this.jobs.sort(Comparator.comparingLong((Job job) -> job.weight).reversed());  // stable for ties
+        options.plan_threads(this.jobs.size());
+    }
+
+    /**
+     * Number of jobs of a file list.
+     *
+     * @param paths       fastq files
+     * @param pairedFiles true:paired-end mode with R1 and R2 files
+     * @return jobs (an R1 file and its R2 file make one job)
+     */
+    public static int count_jobs(List<String> paths, boolean pairedFiles) {
+        int jobs = paths.size();
+        if (pairedFiles) {
+            for (int mate : pair_files(paths)) {
+                if (mate >= 0) {
+                    jobs--;
+                }
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Get the jobs in the submission order.
+     *
+     * @return jobs (largest first)
+     */
+    public List<Job> getJobs() {
+        return this.jobs;
+    }
+
+    /**
+     * Wrap the task of the job to measure its processing time.
+     *
+     * @param job  job
+     * @param task task
+     * @return timed task
+     */
+    public Callable<Void> timed(Job job, Callable<Void> task) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                job.nanos = System.nanoTime() - start;
+            }
+        };
+    }
+
+    /**
+     * Add the result of a phase to the report, and write the schedule.txt file.
+     * The predicted critical path is the longest thread of the LPT schedule (and of the list order schedule
+     * for comparison), converted to seconds at the throughput measured in the phase.
+     * The windows skipped for the bases other than A, C, G and T and the bases trimmed or masked
+     * (see ReadTrimmer) are reported per file, with the hit rate of the duplicate read cache and the scan time
+     * it saved (see ReadCache). With the early stop the reads consumed per file and the rounds are reported.
+     *
+     * @param phase    phase name
+     * @param threads  files read in parallel
+     * @param nanos    elapsed time of the phase
+     * @param counters scan counters of the phase
+     * @return schedule.txt file, null if it could not be written
+     */
+    public String write_report(String phase, int threads, long nanos, ScanCounters counters) {
+        long totalWeight = 0L;
+        long totalNanos = 0L;
+        for (Job job : this.jobs) {
+            totalWeight += job.weight;
+            totalNanos += job.nanos;
+        }
+        // seconds per estimated byte on one thread
+        double secondsPerByte = totalWeight > 0 ? totalNanos / 1e9 / totalWeight : 0.0;
+
+        if (this.report.isEmpty()) {
+            this.report.add("#Plan\t" + this.options.getThreadPlan());
+        }
+        this.report.add("#Phase\t" + phase + "\tParallel\t" + threads);
+        boolean paired = this.options.getPairedEnd() != null;
+        boolean cached = this.options.getDuplicateCache() > 0;
+        boolean early = this.options.getEarlyStop() > 0;
+        this.report.add("#Order\tSample\tFile\tSize\tEstimated\tSeconds\tSkipped\tTrimmed\tMasked"
+                + (paired ? "\tPairs\tPairHits\tPairBoth" : "") + (cached ? "\tCacheHit%\tSaved" : "")
+                + (early ? "\tReads" : ""));
+        int nMutant = this.options.getMutant_files().size();
+        for (int i = 0; i < this.jobs.size(); i++) {
+            Job job = this.jobs.get(i);
+            int sample = job.mutant ? job.index : nMutant + job.index;
+            long skipped = counters.getSkippedWindows(sample);
+            long trimmed = counters.getTrimmedBases(sample);
+            long masked = counters.getMaskedBases(sample);
+            long lookups = counters.getCacheLookups(sample);
+            long hits = counters.getCacheHits(sample);
+            long saved = counters.getSavedNanos(sample);
+            String name = job.file.getName();
+            if (job.mate >= 0) {
+                int mate = job.mutant ? job.mate : nMutant + job.mate;
+                skipped += counters.getSkippedWindows(mate);
+                trimmed += counters.getTrimmedBases(mate);
+                masked += counters.getMaskedBases(mate);
+                lookups += counters.getCacheLookups(mate);
+                hits += counters.getCacheHits(mate);
+                saved += counters.getSavedNanos(mate);
+                name += "," + job.mateFile.getName();
+            }
+            this.report.add((i + 1) + "\t" + (job.mutant ? "Mutant" : "WildType") + (job.index + 1)
+                    + "\t" + name + "\t" + job.size + "\t" + job.weight
+                    + "\t" + String.format("%.2f", job.nanos / 1e9)
+                    + "\t" + skipped + "\t" + trimmed + "\t" + masked
+                    + (paired ? "\t" + counters.getPairs(sample) + "\t" + counters.getPairHits(sample)
+                    + "\t" + counters.getPairBoth(sample) : "")
+                    + (cached ? "\t" + String.format("%.1f", lookups > 0 ? 100.0 * hits / lookups : 0.0)
+                    + "\t" + String.format("%.2f", saved / 1e9) : "")
+                    + (early ? "\t" + counters.getReads(sample) : ""));
+        }
+        if (counters.getRounds() > 0) {
+            this.report.add("#EarlyStop\tRounds\t" + counters.getRounds() + "\tStopped\t" + counters.getStopped()
+                    + "\tCalls\t" + counters.getCalls());
+        }
+        this.report.add("#Predicted\t" + String.format("%.2f", makespan(this.jobs, threads) * secondsPerByte)
+                + "\tListOrder\t" + String.format("%.2f", makespan(this.listOrder, threads) * secondsPerByte)
+                + "\tActual\t" + String.format("%.2f", nanos / 1e9));
+
+        String scheduleFile = this.options.getOutDirectory() + File.separator + this.options.getOut_prefix()
+                + ".schedule.txt";
+        try {
+            Files.write(Paths.get(scheduleFile), this.report);
+            return scheduleFile;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    //========================================================================//
+    // Private function
+    //========================================================================//
+
+    /**
+     * Add the jobs of a file list (an R1 file and its R2 file make one job in the paired-end mode).
+     *
+     * @param mutant true:mutant, false:wild type
+     * @param paths  fastq files
+     */
+    private void add_jobs(boolean mutant, List<String> paths) {
+        int[] mates = new int[paths.size()];
+        boolean[] isMate = new boolean[paths.size()];
+        Arrays.fill(mates, -1);
+        if (this.options.pairedEnd_files()) {
+            mates = pair_files(paths);
+            for (int mate : mates) {
+                if (mate >= 0) {
+                    isMate[mate] = true;
+                }
+            }
+        }
+        for (int i = 0; i < paths.size(); i++) {
+            if (!isMate[i]) {
+                this.listOrder.add(this.create_job(mutant, i, paths.get(i), mates[i],
+                        mates[i] < 0 ? null : paths.get(mates[i])));
+            }
+        }
+    }
+
+    /**
+     * Pair the R1 and R2 files of a file list.
+     *
+     * @param paths fastq files
+     * @return file index of the R2 file of each file (-1:no R2 file)
+     */
+    private static int[] pair_files(List<String> paths) {
+        int[] mates = new int[paths.size()];
+        boolean[] isMate = new boolean[paths.size()];
+        Arrays.fill(mates, -1);
+        List<String> absolute = new ArrayList<>();
+        for (String path : paths) {
+            absolute.add(new File(path).getAbsolutePath());
+        }
+        for (int i = 0; i < paths.size(); i++) {
+            File file = new File(absolute.get(i));
+            Matcher matcher = R1_NAME.matcher(file.getName());
+            if (isMate[i] || !matcher.matches()) {
+                continue;
+            }
+            String mate = new File(file.getParentFile(), matcher.group(1) + "2" + matcher.group(2)).getPath();
+            int j = absolute.indexOf(mate);
+            if (j >= 0 && j != i && mates[j] < 0 && !isMate[j]) {
+                mates[i] = j;
+                isMate[j] = true;
+            }
+        }
+        return mates;
+    }
+
+    /**
+     * Create a job and estimate its uncompressed size.
+     *
+     * @param mutant   true:mutant, false:wild type
+     * @param index    file index
+     * @param path     fastq file
+     * @param mate     file index of the R2 file (-1:no R2 file)
+     * @param matePath R2 file (null:no R2 file)
+     * @return job
+     */
+    private Job create_job(boolean mutant, int index, String path, int mate, String matePath) {
+        File file = new File(path);
+        File mateFile = matePath == null ? null : new File(matePath);
+        long size = file.length();
+        long weight = estimate_size(file);
+        if (mateFile != null) {
+            size += mateFile.length();
+            weight += estimate_size(mateFile);
+        }
+        return new Job(mutant, index, mate, file, mateFile, size, weight);
+    }
+
+    /**
+     * Estimate the uncompressed size of a file.
+     *
+     * @param file fastq file
+     * @return estimated size
+     */
+    private static long estimate_size(File file) {
+        long size = file.length();
+        if (file.getName().endsWith(".gz") && size > 0) {
+            return (long) (size * compression_ratio(file));
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the compression ratio from the first block of the file.
+     *
+     * @param file gzip file
+     * @return uncompressed size / compressed size (1.0 if it could not be read)
+     */
+    private static double compression_ratio(File file) {
+        long[] compressed = {0L};
+        try (InputStream raw = Files.newInputStream(file.toPath());
+             InputStream counting = new InputStream() {
+                 @Override
+                 public int read() throws IOException {
+                     int b = raw.read();
+                     if (b >= 0) {
+                         compressed[0]++;
+                     }
+                     return b;
+                 }
+
+                 @Override
+                 public int read(byte[] b, int off, int len) throws IOException {
+                     int n = raw.read(b, off, (int) Math.min(len, Math.max(SAMPLE_SIZE - compressed[0], 1)));
+                     if (n > 0) {
+                         compressed[0] += n;
+                     }
+                     return n;
+                 }
+             };
+             GZIPInputStream in = new GZIPInputStream(counting, 1 << 16)) {
+            byte[] buffer = new byte[1 << 16];
+            long uncompressed = 0L;
+            int n;
+            while (compressed[0] < SAMPLE_SIZE && (n = in.read(buffer)) != -1) {
+                uncompressed += n;
+            }
+            return compressed[0] > 0 && uncompressed > 0 ? (double) uncompressed / compressed[0] : 1.0;
+        } catch (IOException e) {
+            return 1.0;
+        }
+    }
+
+    /**
+     * Longest thread of the greedy schedule (each job goes to the thread that becomes free first).
+     *
+     * @param order   jobs in the submission order
+     * @param threads files read in parallel
+     * @return critical path (estimated bytes)
+     */
+    private static long makespan(List<Job> order, int threads) {
+        PriorityQueue<Long> loads = new PriorityQueue<>();
+        for (int i = 0; i < Math.max(1, Math.min(threads, order.size())); i++) {
+            loads.add(0L);
+        }
+        long max = 0L;
+        for (Job job : order) {
+            long load = loads.poll() + job.weight;
+            max = Math.max(max, load);
+            loads.add(load);
+        }
+        return max;
+    }
+}